@@ -6,13 +6,12 @@ import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
-import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitTask;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -23,12 +22,23 @@ import java.util.Arrays;
  */
 public class Airship {
 
-    // Task object for moving the airship on a regular interval
-    public BukkitTask task;
+    // The maximum number of blocks that an airship can contain
+    public static final int MAX_BLOCKS = 50000;
+
+    // The number of chunks around the initial block captured before an asynchronous scan starts
+    private static final int SNAPSHOT_RADIUS = 1;
+
+    // The ways a block can change in a turn, a block can change in more than one way
+    private static final byte TURN_WRITE = 1;
+    private static final byte TURN_CLEAR = 2;
+    private static final byte TURN_NEW_CELL = 4;
 
     // The world that this airship is being kept in
     private World world;
 
+    // The name of this airship
+    public String name;
+
     // The player who owns this airship
     public String owner;
 
@@ -38,8 +48,100 @@ public class Airship {
     // The plugin object that owns this airship
     public Plugin owningPlugin;
 
-    // The list of blocks in the airship (in custom block format)
-    private ArrayList<AirshipBlock> blocks;
+    // The blocks in the airship (in a compact block store), each block is stored as an offset from the origin. This
+    // is null until the airship is first used if it was loaded from a store (see load)
+    private AirshipBlockStore blocks;
+
+    // The store the blocks are read from the first time the airship is used, and the header read from it at startup,
+    // which gives the bounding box until then (both are null once the blocks are loaded)
+    private AirshipStore store;
+    private AirshipFile header;
+
+    // The origin of the airship in the world, moving the airship only changes the origin
+    private int originX;
+    private int originY;
+    private int originZ;
+
+    // The index of block owners this airship is registered in (null if it isn't registered)
+    private AirshipIndex index;
+
+    // The cached move plan for each velocity (keyed by the velocity packed with BlockKey), these are thrown away when
+    // the shape of the airship changes
+    private LongObjectHashMap<MovePlan> movePlans = new LongObjectHashMap<>(8);
+
+    // Block changes for this airship that are waiting to be written to the world by the AirshipMover
+    private BlockWriteBuffer pendingWrites = new BlockWriteBuffer(256);
+
+    // Counts the changes to the shape of the airship (turns and rescans), a prepared move for an older shape is
+    // thrown away
+    private int generation;
+
+    // The next move, prepared on a worker thread (see PreparedMove), the same one is run again for every move
+    private final PreparedMove preparedMove = new PreparedMove();
+
+    // The copy of the blocks that moves are prepared from, taken once for each shape of the airship (the generation it
+    // was taken for) so the worker never reads the blocks while they are being turned or rescanned
+    private AirshipBlockStore preparedBlocks;
+    private int preparedBlocksGeneration;
+
+    // Has the airship changed since it was last saved?
+    private boolean dirty;
+
+    // A turn that the owner is standing on, the owner is turned with the airship once the turn has been written (null
+    // if there isn't one)
+    private TurnDirection ownerTurn;
+    private int ownerTurnPivotX;
+    private int ownerTurnPivotZ;
+
+    // The slot in the move period that this airship moves on (see AirshipMover)
+    public int moveSlot;
+
+    // Is the airship waiting for the chunks in front of it to load before it can make its move?
+    public boolean moveDeferred;
+
+    // The number of times in a row a stopped virtual airship has found something where it would be written back into
+    // the world (see AirshipMover)
+    public int landingAttempts;
+
+    // Is the airship travelling virtually? A virtual airship isn't in the world at all, only its origin and its
+    // entries in the index move, until it is written back into the world by materialize
+    private boolean virtual;
+
+    // Is the airship being shown to nearby players as a ghost? While it is, moves are sent straight to the players
+    // watching instead of being written to the world, and the world still holds the airship at the real origin
+    private boolean ghosted;
+    private int realOriginX;
+    private int realOriginY;
+    private int realOriginZ;
+
+    // The names of the players the ghost is being shown to
+    private HashSet<String> ghostViewers = new HashSet<>();
+
+    // The names of the players near the airship, filled in on every move and swapped with ghostViewers when a ghost
+    // starts, so the sets are reused rather than made for every move
+    private HashSet<String> nearbyPlayers = new HashSet<>();
+
+    // A location reused for reading player locations and sending block changes on every move (only used on the
+    // server thread)
+    private final Location scratchLocation = new Location(null, 0, 0, 0);
+
+    // The chunks under the hull a ghosted airship has left in the world, these are held until the world has caught up
+    // with the ghost so clearing the hull doesn't load them in the middle of a tick (only valid if realHullLoader is set)
+    private ChunkLoader realHullLoader;
+    private int realMinChunkX;
+    private int realMaxChunkX;
+    private int realMinChunkZ;
+    private int realMaxChunkZ;
+
+    // The block changes for a ghost move, these are sent to the viewers as soon as the move is planned
+    private BlockWriteBuffer ghostWrites = new BlockWriteBuffer(256);
+
+    // The range of chunks this airship is holding loaded through the ChunkLoader (only valid if holdingChunks is set)
+    private boolean holdingChunks;
+    private int heldMinChunkX;
+    private int heldMaxChunkX;
+    private int heldMinChunkZ;
+    private int heldMaxChunkZ;
 
     // Is the airship currently moving?
     public boolean isMoving;
@@ -50,63 +152,171 @@ public class Airship {
     // The last direction the block was travelling in (when moving up/down)
     public BlockFace lastDirection;
 
+    // The number of blocks the airship moves each move
+    public int speed = 1;
+
+    // Is the airship climbing (1) or descending (-1) as it travels forward or in reverse? (0 to stay level)
+    public int climb;
+
     /**
-     * Creates a new airship
+     * Creates a new airship from blocks that have already been scanned
      *
-     * @param world        The world that this airship is being created in
-     * @param initialBlock The block to start scanning this airship from (this is the block below the player)
-     * @param player       The player who owns this airship
-     * @throws IllegalAirshipException Thrown if the number of blocks in the airship exceeds the limit
+     * @param world            The world that this airship is being created in
+     * @param blocks           The blocks in the airship (as offsets from the initial block)
+     * @param initialBlock     The block the airship was scanned from, this becomes the origin
+     * @param player           The player who owns this airship
+     * @param currentDirection The direction the airship is facing
      */
-    public Airship(World world, Block initialBlock, String player) throws IllegalAirshipException {
-
-        // Set the airship variables from the constructor parameters
+    private Airship(World world, AirshipBlockStore blocks, Location initialBlock, String player, BlockFace currentDirection) {
         this.world = world;
+        this.blocks = blocks;
+        this.originX = initialBlock.getBlockX();
+        this.originY = initialBlock.getBlockY();
+        this.originZ = initialBlock.getBlockZ();
         this.owner = player;
+        this.currentDirection = currentDirection;
+        this.dirty = true;
+    }
 
-        // Create the collection to store the airship in
-        blocks = new ArrayList<>();
-
-        // Get the direction the player is facing
-        currentDirection = playerDirection(Bukkit.getPlayer(player));
+    /**
+     * Creates a new airship, scanning the blocks away from the server thread. The chunks around the initial block
+     * are captured here, the flood fill runs on a worker thread and the callback is run back on the server thread
+     * once the airship is ready. This must be called on the server thread.
+     *
+     * @param plugin       The plugin that will own the airship
+     * @param world        The world that this airship is being created in
+     * @param initialBlock The block to start scanning this airship from (this is the block below the player)
+     * @param player       The player who owns this airship
+     * @param callback     Called with the new airship, or the reason the scan failed
+     */
+    public static void scanAirshipAsync(final AirshipPlugin plugin, final World world, Block initialBlock,
+                                        final String player, final AirshipScanCallback callback) {
+
+        // Anything that touches the world or the player has to be done now, while we are on the server thread
+        final BlockFace direction = playerDirection(Bukkit.getPlayer(player));
+        final BlockSource source = new SnapshotBlockSource(plugin, world, initialBlock.getX(), initialBlock.getZ(),
+                SNAPSHOT_RADIUS);
+        final Location origin = initialBlock.getLocation();
+        final int x = initialBlock.getX();
+        final int y = initialBlock.getY();
+        final int z = initialBlock.getZ();
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+
+                String failure;
+
+                try {
+                    // Scan the airship from the snapshots
+                    final AirshipBlockStore blocks = new AirshipScanner(source, MAX_BLOCKS).scan(x, y, z);
+
+                    // Hand the finished airship back to the server thread
+                    Bukkit.getScheduler().runTask(plugin, new Runnable() {
+                        @Override
+                        public void run() {
+                            Airship airship = new Airship(world, blocks, origin, player, direction);
+                            airship.owningPlugin = plugin;
+                            callback.scanComplete(airship);
+                        }
+                    });
+                    return;
+
+                } catch (IllegalAirshipException e) {
+                    failure = e.getMessage();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("Airship scan for " + player + " failed: " + e.getMessage());
+                    failure = "The scan was interrupted";
+                }
 
-        // We need to scan the airship
-        scanAirship(initialBlock);
+                // Report the failure on the server thread
+                final String reason = failure;
+                Bukkit.getScheduler().runTask(plugin, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.scanFailed(reason);
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Loads an airship from disk
+     * Creates an airship from its header, which has already been read from a store at startup. The blocks are read
+     * from the store the first time the airship is used (see load), so most parked airships never need more than the
+     * header.
      *
-     * @param file The File of the airship to load
-     * @throws IOException Thrown if the Airship file is corrupt and can't be read
+     * @param name   The name of the airship
+     * @param store  The store the airship is saved in
+     * @param header The header read from the store
      */
-    public Airship(File file) throws IOException {
+    public Airship(String name, AirshipStore store, AirshipFile header) {
+        this(header);
+        this.name = name;
+        this.store = store;
+    }
 
-        // Create the collection to store the airship in
-        blocks = new ArrayList<>();
+    /**
+     * Creates an airship from the contents of an airship file
+     *
+     * @param contents The contents of the file, the blocks are null if only the header was read
+     */
+    private Airship(AirshipFile contents) {
+        this.owner = contents.owner;
+        this.world = Bukkit.getWorld(contents.world);
+        this.currentDirection = contents.direction;
+        this.originX = contents.originX;
+        this.originY = contents.originY;
+        this.originZ = contents.originZ;
+        this.virtual = contents.virtual;
+        this.blocks = contents.blocks;
+        this.header = contents.blocks == null ? contents : null;
+    }
 
-        BufferedReader reader = new BufferedReader(new FileReader(file.getAbsoluteFile()));
+    /**
+     * @return True if the blocks of the airship have been loaded
+     */
+    public boolean isLoaded() {
+        return blocks != null;
+    }
 
-        this.owner = reader.readLine();
+    /**
+     * Reads the blocks of the airship from its store, if they haven't been read yet. The airship takes its place in the
+     * index block by block from then on. If the blocks can't be read the error is logged once and the airship is left
+     * with only its bounding box.
+     *
+     * @return True if the blocks are loaded
+     */
+    public boolean load() {
 
-        String world = reader.readLine();
-        this.world = Bukkit.getWorld(world);
+        if (blocks != null) {
+            return true;
+        }
+        if (store == null) {
+            return false;
+        }
 
-        String direction = reader.readLine();
-        this.currentDirection = BlockFace.valueOf(direction);
+        AirshipStore source = store;
+        store = null;
 
-        int airshipBlockCount = Integer.valueOf(reader.readLine());
-        for (int i = 0; i < airshipBlockCount; i++) {
-            String[] blockData = reader.readLine().split(",");
-            int x = Integer.valueOf(blockData[0]);
-            int y = Integer.valueOf(blockData[1]);
-            int z = Integer.valueOf(blockData[2]);
-            Material m = Material.valueOf(blockData[3]);
-            int d = Integer.valueOf(blockData[4]);
+        AirshipBlockStore read;
+        try {
+            read = source.read(name).blocks;
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, String.format("Failed to load airship '%s'", name), e);
+            return false;
+        }
 
-            AirshipBlock airshipBlock = new AirshipBlock(x, y, z, m, d);
-            blocks.add(airshipBlock);
+        // Swap the bounding box in the index for the blocks, the box is taken out while it still comes from the header
+        if (index != null) {
+            index.removeUnloaded(this);
+        }
+        blocks = read;
+        header = null;
+        if (index != null) {
+            updateIndex(true);
         }
+        return true;
     }
 
     /**
@@ -115,7 +325,7 @@ public class Airship {
      * @param player The player who's direction we want to know
      * @return The current direction the player is facing as a BlockFace
      */
-    private BlockFace playerDirection(Player player) {
+    private static BlockFace playerDirection(Player player) {
 
         // Get the Yaw of the player
         float absoluteYaw = player.getLocation().getYaw();
@@ -141,112 +351,486 @@ public class Airship {
     @SuppressWarnings("unused")
     public void rescanAirship() {
 
-        // Get the first block in the airship (index 0)
-        AirshipBlock b = blocks.get(0);
+        // There is nothing to rescan from if the airship has no blocks
+        if (!load() || blocks.size() == 0) {
+            return;
+        }
 
-        // Clear the list of blocks from the airship
-        blocks.clear();
+        // Get the first block in the airship (index 0)
+        int x = originX + blocks.getX(0);
+        int y = originY + blocks.getY(0);
+        int z = originZ + blocks.getZ(0);
 
         try {
-            // Rescan the airship
-            scanAirship(world.getBlockAt(b.x, b.y, b.z));
+            // Rescan the airship, the old blocks are kept if the scan fails
+            scanAirship(world.getBlockAt(x, y, z));
         } catch (IllegalAirshipException e) {
-            e.printStackTrace();
+            getLogger().log(Level.WARNING, String.format("Failed to rescan airship '%s'", name), e);
         }
     }
 
+    /**
+     * @return The logger of the plugin that owns the airship, or the server logger if it doesn't have one yet
+     */
+    private Logger getLogger() {
+        return owningPlugin != null ? owningPlugin.getLogger() : Bukkit.getLogger();
+    }
+
 
     /**
-     * Recursive function to scan all of the blocks in the airship, takes the initial block and scans all neighbours
-     * until it finds air in all neighbouring locations. Will only scan up to a pre-defined limit of blocks before
-     * throwing and exception
+     * Scans all of the blocks in the airship based on the initial block, see AirshipScanner for the details of which
+     * blocks are included. Will only scan up to a pre-defined limit of blocks before throwing an exception
      *
-     * @param block The initial block to begin this round of scanning from
+     * @param block The initial block to begin scanning from
      * @throws IllegalAirshipException Thrown if the number of blocks in the airship exceeds the pre-defined limit
      */
     private void scanAirship(Block block) throws IllegalAirshipException {
+        AirshipBlockStore scanned = new AirshipScanner(new WorldBlockSource(world), MAX_BLOCKS).scan(block.getX(), block.getY(), block.getZ());
 
-        // Create array to hold the 26 block neighbours
-        Block neighbours[] = new Block[26];
-
-        // Create array to hold the 6 nearest neighbours
-        Integer[] nativeNearest = {4, 10, 12, 13, 15, 21};
-        ArrayList<Integer> nearestNeighbours = new ArrayList<>(Arrays.asList(nativeNearest));
-
-        // Create an array for each of the blocks that neighbours the initial block
-        int x = 0; // Array index counter
-        for (int i = -1; i < 2; i++) { // X
-            for (int j = -1; j < 2; j++) { // Y
-                for (int k = -1; k < 2; k++) { // Z
-                    if (i == 0 && j == 0 && k == 0) // We do not want the initial block repeating
-                        continue;
-                    // Get the block and add to the neighbour array
-                    neighbours[x++] = block.getRelative(i, j, k);
-                }
+        // Take the old blocks out of the index before we replace them, any prepared move is for the old shape
+        updateIndex(false);
+        generation++;
+
+        blocks = scanned;
+
+        // The scanned blocks are offsets from the initial block, so this is the new origin
+        originX = block.getX();
+        originY = block.getY();
+        originZ = block.getZ();
+
+        // The shape of the airship may have changed
+        movePlans.clear();
+        updateIndex(true);
+        dirty = true;
+    }
+
+    /**
+     * Moves the airship by its velocity. However many blocks the airship moves, and in however many directions, the
+     * move is made as a single translation with a single set of block changes. The airship and the index are updated
+     * straight away, the block changes are queued and written to the world by writeBlocks. If the airship would hit
+     * something on the way it is stopped instead.
+     * <p/>
+     * The block changes are normally prepared on a worker thread after the previous move (see PreparedMove), they are
+     * only worked out here if that move isn't ready or no longer matches the airship.
+     *
+     * @return True if the airship moved, false if it was blocked
+     */
+    @SuppressWarnings("deprecation")
+    public boolean moveAirship() {
+
+        int dx = getVelocityX();
+        int dy = getVelocityY();
+        int dz = getVelocityZ();
+
+        // Take the prepared move if it is for this move
+        PreparedMove prepared = preparedMove.isFor(generation, originX, originY, originZ, dx, dy, dz) ? preparedMove : null;
+        preparedMove.discard();
+
+        // Get the plan for moving by the whole velocity, it only changes when the shape of the airship does
+        MovePlan plan = prepared != null ? prepared.getPlan() : getMovePlan(dx, dy, dz);
+
+        // Stop the airship if it is about to fly into something
+        if (isBlocked(plan)) {
+            stopAirship();
+
+            Player player = Bukkit.getPlayer(owner);
+            if (player != null) {
+                player.sendMessage(String.format("Airship '%s' has hit something and stopped!", name));
             }
+            return false;
         }
 
-        // Go through each neighbouring block and scan it.
-        for (int i = 0; i < neighbours.length; i++) {
+        // A ghost move goes to the players watching rather than the world
+        BlockWriteBuffer writes = ghosted ? ghostWrites : pendingWrites;
+
+        // Clear the cells on the trailing face of the airship, these are empty after the move
+        int moveStart = writes.size();
+        for (int i : plan.clears) {
+            int x = originX + blocks.getX(i);
+            int y = originY + blocks.getY(i);
+            int z = originZ + blocks.getZ(i);
+            if (!virtual && prepared == null) {
+                writes.add(x, y, z, Material.AIR.getId(), 0);
+            }
 
-            // Create the airship block for this neighbour
-            AirshipBlock b = new AirshipBlock(neighbours[i]);
+            // This location no longer belongs to the airship
+            if (index != null) {
+                index.remove(world, x, y, z, this);
+            }
+        }
 
+        // Shift the origin of the airship in the specified direction, the blocks are relative to it so they all move
+        originX += plan.dx;
+        originY += plan.dy;
+        originZ += plan.dz;
+        dirty = true;
+
+        // Place the blocks whose new location held something different before the move
+        if (!virtual && prepared != null) {
+            writes.addAll(prepared.getWrites());
+        } else if (!virtual) {
+            for (int i : plan.writes) {
+                writes.add(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i), blocks.getType(i), blocks.getData(i));
+            }
 
+            // The clears and placements never share a location, so the whole move can be sorted into chunk order
+            writes.sortByChunk(moveStart, writes.size());
+        }
 
-            // If this block is already in the airship we can ignore it
-            if (!blocks.contains(b)) {
+        if (ghosted) {
+            sendGhostWrites();
+        }
 
-                // If this block is made of air then we do not add it to the airship (unless it is a direct
-                // neighbour, these are up,down,north,east,south and west.)
-                if ((b.t == Material.AIR && nearestNeighbours.contains(i)) || b.t != Material.AIR) {
-                    blocks.add(b);
-                }
+        // The leading face of the airship has moved into locations it didn't own before
+        if (index != null) {
+            for (int i : plan.leading) {
+                index.put(world, originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i), this);
+            }
+        }
+
+        // Work out the next move while this one is being written
+        prepareNextMove();
+
+        return true;
+    }
+
+    /**
+     * Starts working out the block changes for the next move on a worker thread, the result is picked up by the next
+     * call to moveAirship. Nothing is prepared for an airship that is travelling virtually as it doesn't write any
+     * blocks.
+     */
+    private void prepareNextMove() {
+
+        if (owningPlugin == null || virtual || !isMoving) {
+            return;
+        }
+
+        // The worker reads its own copy of the blocks, the copy is only taken when the shape has changed and its
+        // offset index is built here so the worker never writes to it
+        if (preparedBlocks == null || preparedBlocksGeneration != generation) {
+            preparedBlocks = blocks.copy();
+            preparedBlocks.buildIndex();
+            preparedBlocksGeneration = generation;
+        }
+
+        // Everything the worker needs is handed over here on the server thread, including the plan for the move. If
+        // the last move is somehow still being prepared the next one is worked out when it is made instead.
+        MovePlan plan = getMovePlan(getVelocityX(), getVelocityY(), getVelocityZ());
+        if (preparedMove.start(generation, preparedBlocks, plan, originX, originY, originZ)) {
+            Bukkit.getScheduler().runTaskAsynchronously(owningPlugin, preparedMove);
+        }
+    }
+
+    /**
+     * Gets the plan for moving the airship by an amount, the plans are cached until the shape of the airship changes
+     *
+     * @param dx The amount to move on the X axis
+     * @param dy The amount to move on the Y axis
+     * @param dz The amount to move on the Z axis
+     * @return The plan for the move
+     */
+    private MovePlan getMovePlan(int dx, int dy, int dz) {
+        long key = BlockKey.pack(dx, dy, dz);
+        MovePlan plan = movePlans.get(key);
+        if (plan == null) {
+            plan = new MovePlan(blocks, dx, dy, dz);
+            movePlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @return The direction the airship actually moves in (up and down do not support reversing)
+     */
+    private BlockFace getMoveDirection() {
+        return isReversing && currentDirection != BlockFace.UP && currentDirection != BlockFace.DOWN ? currentDirection.getOppositeFace() : currentDirection;
+    }
+
+    // The velocity of the airship, the number of blocks it moves along each axis every move
+    public int getVelocityX() {
+        return getMoveDirection().getModX() * speed;
+    }
+
+    public int getVelocityY() {
+        BlockFace direction = getMoveDirection();
+        return (direction == BlockFace.UP || direction == BlockFace.DOWN ? direction.getModY() : climb) * speed;
+    }
+
+    public int getVelocityZ() {
+        return getMoveDirection().getModZ() * speed;
+    }
+
+    /**
+     * Holds the chunks the airship will fly through over the next few moves, so they are loaded before the airship
+     * gets there, and lets go of the chunks it has left behind. The chunks are loaded a few at a time by the
+     * ChunkLoader, so use chunksLoaded to check whether the airship has caught up with the loader.
+     *
+     * @param loader    The loader to hold the chunks with
+     * @param lookAhead The number of moves ahead to load chunks for
+     */
+    public void holdChunks(ChunkLoader loader, int lookAhead) {
+
+        int dx = getVelocityX();
+        int dz = getVelocityZ();
 
-                // If the airship is already at the limit then throw an exception to prevent it being created
-                if (blocks.size() > 5000) {
-                    throw new IllegalAirshipException("Too many blocks son!");
+        // The chunks covered by the bounding box as it sweeps over the next few moves
+        int minChunkX = (getMinX() + Math.min(0, dx * lookAhead)) >> 4;
+        int maxChunkX = (getMaxX() + Math.max(0, dx * lookAhead)) >> 4;
+        int minChunkZ = (getMinZ() + Math.min(0, dz * lookAhead)) >> 4;
+        int maxChunkZ = (getMaxZ() + Math.max(0, dz * lookAhead)) >> 4;
+
+        // Hold the new range before releasing the old one, so chunks in both are never let go
+        if (!holdingChunks || minChunkX != heldMinChunkX || maxChunkX != heldMaxChunkX || minChunkZ != heldMinChunkZ || maxChunkZ != heldMaxChunkZ) {
+
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    loader.hold(world, chunkX, chunkZ);
                 }
+            }
+            releaseChunks(loader);
 
-                // If the block is not air, then we need to scan its neighbours
-                if (b.t != Material.AIR) {
-                    scanAirship(neighbours[i]); // recursion : )
+            holdingChunks = true;
+            heldMinChunkX = minChunkX;
+            heldMaxChunkX = maxChunkX;
+            heldMinChunkZ = minChunkZ;
+            heldMaxChunkZ = maxChunkZ;
+        }
+    }
+
+    /**
+     * Checks if the chunks under the airship are loaded, either where it is now or where it will be after a number of
+     * moves in its current direction
+     *
+     * @param moves The number of moves ahead to check (0 for where the airship is now)
+     * @return True if every chunk under the bounding box is loaded
+     */
+    public boolean chunksLoaded(int moves) {
+
+        int dx = getVelocityX() * moves;
+        int dz = getVelocityZ() * moves;
+
+        for (int chunkX = (getMinX() + Math.min(0, dx)) >> 4; chunkX <= (getMaxX() + Math.max(0, dx)) >> 4; chunkX++) {
+            for (int chunkZ = (getMinZ() + Math.min(0, dz)) >> 4; chunkZ <= (getMaxZ() + Math.max(0, dz)) >> 4; chunkZ++) {
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    return false;
                 }
             }
         }
+
+        return true;
+    }
+
+    /**
+     * Lets go of every chunk the airship is holding, the server is free to unload them again
+     *
+     * @param loader The loader the chunks are held with
+     */
+    public void releaseChunks(ChunkLoader loader) {
+
+        // The hull a ghost left behind is held until the settle has been written
+        if (!ghosted && pendingWrites.isEmpty()) {
+            releaseRealHull();
+        }
+
+        if (!holdingChunks) {
+            return;
+        }
+
+        for (int chunkX = heldMinChunkX; chunkX <= heldMaxChunkX; chunkX++) {
+            for (int chunkZ = heldMinChunkZ; chunkZ <= heldMaxChunkZ; chunkZ++) {
+                loader.release(world, chunkX, chunkZ);
+            }
+        }
+        holdingChunks = false;
+    }
+
+    /**
+     * Checks if the airship would hit something by making a move. A move of more than one block is checked a step at
+     * a time along the way, so a fast airship can't jump through something thin.
+     *
+     * @param plan The plan for the move
+     * @return True if the airship would hit something at any step of the move
+     */
+    private boolean isBlocked(MovePlan plan) {
+
+        // Parked airships that haven't been loaded are only known by their bounding box, load any we could fly into so
+        // their blocks are in the index
+        if (index != null) {
+            index.loadWithin(world, getMinX() + Math.min(0, plan.dx), getMinY() + Math.min(0, plan.dy), getMinZ() + Math.min(0, plan.dz),
+                    getMaxX() + Math.max(0, plan.dx), getMaxY() + Math.max(0, plan.dy), getMaxZ() + Math.max(0, plan.dz));
+        }
+
+        int steps = Math.max(Math.abs(plan.dx), Math.max(Math.abs(plan.dy), Math.abs(plan.dz)));
+        if (steps == 1) {
+            return isBlocked(plan, originX, originY, originZ, false);
+        }
+
+        for (int step = 1; step <= steps; step++) {
+
+            // Spread the move along each axis as evenly as possible over the steps, each step moves at most one block
+            int fromX = plan.dx * (step - 1) / steps;
+            int fromY = plan.dy * (step - 1) / steps;
+            int fromZ = plan.dz * (step - 1) / steps;
+            MovePlan stepPlan = getMovePlan(plan.dx * step / steps - fromX, plan.dy * step / steps - fromY, plan.dz * step / steps - fromZ);
+
+            if (isBlocked(stepPlan, originX + fromX, originY + fromY, originZ + fromZ, step > 1)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
-     * Moves the airship in the specified direction
+     * Checks if the airship would hit something by making a single step from a location. Only the leading face of the
+     * airship can move into a cell that isn't already part of the airship, so this only costs as much as the cross
+     * section of the airship. Other airships are found through the occupancy bitmap, which is up to date even while
+     * their moves are still waiting to be written to the world.
+     *
+     * @param plan    The plan for the step
+     * @param fromX   The X location of the origin before the step
+     * @param fromY   The Y location of the origin before the step
+     * @param fromZ   The Z location of the origin before the step
+     * @param partway True if the airship has already stepped away from where it is now, the leading face may then
+     *                move into cells the airship still holds
+     * @return True if any cell the leading face moves into isn't empty (only cells in loaded chunks are looked at when
+     * travelling virtually), or is outside the world
      */
     @SuppressWarnings("deprecation")
-    public void moveAirship() {
+    private boolean isBlocked(MovePlan plan, int fromX, int fromY, int fromZ, boolean partway) {
+
+        int maxHeight = world.getMaxHeight();
 
-        // We need to loop over each block in the airship and move the block.
-        for (AirshipBlock block : blocks) {
+        // The last chunk a virtual airship looked up, and whether it is loaded
+        boolean checkedChunk = false;
+        boolean chunkLoaded = false;
+        int chunkX = 0;
+        int chunkZ = 0;
 
-            // Call the method to shift the block in the specified direction
-            block.shiftBlock(currentDirection, isReversing);
+        for (int i : plan.leading) {
 
-            // Get the current block at the new location
-            Block newBlock = world.getBlockAt(block.x, block.y, block.z);
+            int x = fromX + plan.dx + blocks.getX(i);
+            int y = fromY + plan.dy + blocks.getY(i);
+            int z = fromZ + plan.dz + blocks.getZ(i);
 
-            // Set the necessary meta-data on the block
-            newBlock.setMetadata("airship-data", new FixedMetadataValue(owningPlugin, "1"));
+            // The airship can't leave the top or bottom of the world
+            if (y < 0 || y >= maxHeight) {
+                return true;
+            }
 
-            // If the new location is the same block as the old location we can skip over changing it
-            if (newBlock.getType() == block.t && newBlock.getData() == block.d) {
+            // The airship can't get in its own way
+            if (partway && blocks.indexOf(x - originX, y - originY, z - originZ) != -1) {
                 continue;
             }
 
+            // Any cell that belongs to another airship is in the way
+            if (index != null && index.isOccupied(world, x, y, z)) {
+                return true;
+            }
 
+            // The world still holds a ghosted airship where it really is, it can't get in its own way
+            if (ghosted && blocks.indexOf(x - realOriginX, y - realOriginY, z - realOriginZ) != -1) {
+                continue;
+            }
 
-            // Set the type of the new location
-            newBlock.setType(block.t);
+            // A virtual airship can't load chunks as it goes, so it only looks at the terrain in chunks that are already
+            // loaded, the rest is checked before it comes back into the world (see canMaterialize)
+            if (virtual) {
+                if (!checkedChunk || x >> 4 != chunkX || z >> 4 != chunkZ) {
+                    checkedChunk = true;
+                    chunkX = x >> 4;
+                    chunkZ = z >> 4;
+                    chunkLoaded = world.isChunkLoaded(chunkX, chunkZ);
+                }
+                if (!chunkLoaded) {
+                    continue;
+                }
+            }
 
-            // Set the data of the new location (color etc..)
-            newBlock.setData(block.d);
+            // Anything that isn't air is in the way
+            if (world.getBlockTypeIdAt(x, y, z) != Material.AIR.getId()) {
+                return true;
+            }
         }
+
+        return false;
+    }
+
+    /**
+     * @return True if this airship has block changes waiting to be written to the world
+     */
+    public boolean hasPendingWrites() {
+        return !pendingWrites.isEmpty();
+    }
+
+    /**
+     * Writes the waiting block changes for this airship to the world
+     *
+     * @param budget The maximum number of blocks to write
+     * @return The number of blocks that were written
+     */
+    public int writeBlocks(int budget) {
+        return writeBlocks(budget, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes the waiting block changes for this airship to the world. The changes are already sorted by chunk, so
+     * each chunk is looked up once for a run of changes, and physics is not applied so the changes don't trigger
+     * updates in each other (torches dropping off walls that haven't been placed yet etc..). The Bukkit API can only
+     * set a block through a Block, so each change still makes one short lived Block object.
+     *
+     * @param budget   The maximum number of blocks to write
+     * @param deadline The System.nanoTime to stop writing at, or Long.MAX_VALUE to write the whole budget
+     * @return The number of blocks that were written
+     */
+    @SuppressWarnings("deprecation")
+    public int writeBlocks(int budget, long deadline) {
+
+        int start = pendingWrites.position();
+        int end = start + Math.min(budget, pendingWrites.remaining());
+
+        // The chunk we are currently writing to
+        Chunk chunk = null;
+        int chunkX = 0;
+        int chunkZ = 0;
+
+        int i = start;
+        while (i < end) {
+
+            int x = pendingWrites.getX(i);
+            int z = pendingWrites.getZ(i);
+
+            // Only look up the chunk when the run of changes moves into a new one
+            if (chunk == null || chunkX != x >> 4 || chunkZ != z >> 4) {
+                chunkX = x >> 4;
+                chunkZ = z >> 4;
+                chunk = world.getChunkAt(chunkX, chunkZ);
+            }
+
+            // Set the type and data (color etc..) of the location without applying physics, the AirshipIndex keeps
+            // track of which blocks belong to the airship so we don't need to tag the block with metadata
+            chunk.getBlock(x & 15, pendingWrites.getY(i), z & 15).setTypeIdAndData(pendingWrites.getType(i), pendingWrites.getData(i), false);
+            i++;
+
+            // Check the clock every so often, the rest is carried over to the next tick once we run out of time
+            if ((i - start) % 256 == 0 && deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+
+        pendingWrites.advance(i - start);
+
+        // The owner is turned with the airship once a turn they are standing on has been written
+        if (ownerTurn != null && pendingWrites.isEmpty()) {
+            turnOwner();
+        }
+
+        // The hull a ghost left behind has been cleared once a settle has been written
+        if (!ghosted && pendingWrites.isEmpty()) {
+            releaseRealHull();
+        }
+
+        return i - start;
     }
 
     /**
@@ -256,14 +840,14 @@ public class Airship {
      */
     public void startAirship(AirshipPlugin plugin) {
 
-        // Check if the airship already moving
-        if (!isMoving) {
+        // Check if the airship already moving (an airship that can't be loaded can't move)
+        if (!isMoving && load()) {
 
             // Play the engine start sound to the player (TODO: Change when custom sounds are supported)
             Bukkit.getPlayer(owner).playSound(Bukkit.getPlayer(owner).getLocation(), Sound.PORTAL, 1.0f, 1.0f);
 
-            // Create a repeating task to move the airship on a regular interval (currently 2.5 seconds)
-            task = Bukkit.getScheduler().runTaskTimer(plugin, new AirshipMover(this), 0, 50);
+            // Hand the airship to the mover, which moves the whole fleet on a regular interval
+            plugin.getMover().addAirship(this);
 
             // Set the is moving flag to true
             isMoving = true;
@@ -271,105 +855,470 @@ public class Airship {
     }
 
     /**
-     * Stops the airship moving by cancelling the repeating task
+     * Stops the airship moving, the mover lets go of the airship once its last move has been written
      */
     public void stopAirship() {
 
-        // If the airship is not moving then we don't do anything
-        if (isMoving) {
+        // Set the moving flag to false
+        isMoving = false;
+
+        // The copy of the blocks for preparing moves isn't needed until the airship moves again
+        preparedBlocks = null;
+
+        // The world needs to catch up with a ghosted airship now it has stopped
+        settleGhost();
+    }
+
+    /**
+     * Checks if any player is close enough to the airship to see it
+     *
+     * @param radius The distance from the bounding box of the airship a player must be within
+     * @return True if a player in the same world is within the radius of the airship
+     */
+    public boolean isObserved(int radius) {
+
+        for (Player player : world.getPlayers()) {
+            Location location = player.getLocation(scratchLocation);
+            if (location.getBlockX() >= getMinX() - radius && location.getBlockX() <= getMaxX() + radius &&
+                    location.getBlockZ() >= getMinZ() - radius && location.getBlockZ() <= getMaxZ() + radius) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 
-            // Cancel the repeating task
-            task.cancel();
+    /**
+     * Checks if any player has the chunks under the airship in view. A chunk that the airship is holding loaded through
+     * the ChunkLoader doesn't count, only the chunks the server keeps loaded around the players.
+     *
+     * @return True if any chunk under the bounding box of the airship is in use by a player
+     */
+    public boolean chunksInUse() {
 
-            // Set the moving flag to false
-            isMoving = false;
+        for (int chunkX = getMinX() >> 4; chunkX <= getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = getMinZ() >> 4; chunkZ <= getMaxZ() >> 4; chunkZ++) {
+                if (world.isChunkInUse(chunkX, chunkZ)) {
+                    return true;
+                }
+            }
         }
+
+        return false;
     }
 
     /**
-     * Rotates the airship in the specified direction
+     * Checks if a virtual airship can be written back into the world where it is now. The terrain in chunks that
+     * weren't loaded isn't checked while the airship travels virtually, so it may have ended up somewhere that isn't
+     * clear. Other airships can't be in the way, the index keeps them out even while this one is virtual. The chunks
+     * under the airship must be loaded.
      *
-     * @param turnDirection The direction to rotate the airship (left or right)
+     * @return True if every cell under the airship is empty
      */
     @SuppressWarnings("deprecation")
-    public void rotateAirship(TurnDirection turnDirection) {
+    public boolean canMaterialize() {
+
+        for (int i = 0; i < blocks.size(); i++) {
+            if (world.getBlockTypeIdAt(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i)) != Material.AIR.getId()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return True if the airship is travelling virtually (it isn't in the world)
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Takes the airship out of the world so it can travel virtually, every block is queued to be cleared. The
+     * airship keeps its place in the index, so other airships still can't fly into it.
+     */
+    @SuppressWarnings("deprecation")
+    public void dematerialize() {
+
+        if (virtual) {
+            return;
+        }
+
+        // Bring the world up to date first, so the blocks are cleared from where the airship actually is
+        settleGhost();
 
-        // We need to get the center point of the airship
-        int maxX = blocks.get(0).x;
-        int maxZ = blocks.get(0).z;
+        int start = pendingWrites.size();
+        for (int i = 0; i < blocks.size(); i++) {
+            pendingWrites.add(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i), Material.AIR.getId(), 0);
+        }
+        pendingWrites.sortByChunk(start, pendingWrites.size());
+
+        virtual = true;
+        dirty = true;
+    }
 
-        // Temporary variables for the rotation calculation
-        int minX = maxX;
-        int minZ = maxZ;
+    /**
+     * Puts a virtual airship back into the world where it is now, every block is queued to be written. Anything in the
+     * way is replaced, so check canMaterialize first.
+     */
+    public void materialize() {
+
+        if (!virtual) {
+            return;
+        }
 
-        // Go through each block and find the block at the minimum X and Z values
-        for (AirshipBlock block : blocks) {
-            if (block.x > maxX) {
-                maxX = block.x;
+        int start = pendingWrites.size();
+        for (int i = 0; i < blocks.size(); i++) {
+            pendingWrites.add(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i), blocks.getType(i), blocks.getData(i));
+        }
+        pendingWrites.sortByChunk(start, pendingWrites.size());
+
+        virtual = false;
+        dirty = true;
+    }
+
+    /**
+     * Decides whether the airship should be shown as a ghost for its next move. The airship is only ghosted while
+     * nobody is aboard, and the world is brought up to date whenever a player boards or the players watching change
+     * (a player who wasn't watching would see the airship where the world has it, not where the ghost is).
+     *
+     * @param radius The distance from the bounding box of the airship a player can watch the ghost from
+     * @param loader The loader to hold the chunks under the hull left in the world with, while the airship is ghosted
+     */
+    public void updateGhost(int radius, ChunkLoader loader) {
+
+        // Find the players close enough to see the airship, and whether any of them are aboard
+        HashSet<String> viewers = nearbyPlayers;
+        viewers.clear();
+        boolean boarded = false;
+        for (Player player : world.getPlayers()) {
+            Location location = player.getLocation(scratchLocation);
+            if (location.getBlockX() >= getMinX() - radius && location.getBlockX() <= getMaxX() + radius &&
+                    location.getBlockZ() >= getMinZ() - radius && location.getBlockZ() <= getMaxZ() + radius) {
+                viewers.add(player.getName());
+                boarded |= boundsContain(location.getBlockX(), location.getBlockY() - 1, location.getBlockZ());
             }
-            if (block.x < minX) {
-                minX = block.x;
+        }
+
+        if (ghosted) {
+            if (boarded || !viewers.equals(ghostViewers)) {
+                settleGhost();
             }
-            if (block.z > maxZ) {
-                maxZ = block.z;
+        } else if (!boarded) {
+
+            // Start the ghost from where the airship is now, the world already matches it here
+            ghosted = true;
+            realOriginX = originX;
+            realOriginY = originY;
+            realOriginZ = originZ;
+            nearbyPlayers = ghostViewers;
+            ghostViewers = viewers;
+
+            // Keep the hull in the world loaded until the ghost is settled (a settle that hasn't finished writing yet
+            // is still holding them)
+            if (realHullLoader == null) {
+                realHullLoader = loader;
+                realMinChunkX = getMinX() >> 4;
+                realMaxChunkX = getMaxX() >> 4;
+                realMinChunkZ = getMinZ() >> 4;
+                realMaxChunkZ = getMaxZ() >> 4;
+                for (int chunkX = realMinChunkX; chunkX <= realMaxChunkX; chunkX++) {
+                    for (int chunkZ = realMinChunkZ; chunkZ <= realMaxChunkZ; chunkZ++) {
+                        loader.hold(world, chunkX, chunkZ);
+                    }
+                }
             }
-            if (block.z < minZ) {
-                minZ = block.z;
+        }
+    }
+
+    /**
+     * Lets go of the chunks under the hull a ghosted airship left in the world, once the world has caught up
+     */
+    private void releaseRealHull() {
+
+        if (realHullLoader == null) {
+            return;
+        }
+
+        for (int chunkX = realMinChunkX; chunkX <= realMaxChunkX; chunkX++) {
+            for (int chunkZ = realMinChunkZ; chunkZ <= realMaxChunkZ; chunkZ++) {
+                realHullLoader.release(world, chunkX, chunkZ);
             }
         }
+        realHullLoader = null;
+    }
 
-        // Work out the center point (from the minimum X/Z and maximum X/Z values)
-        int originX = (maxX + minX) / 2;
-        int originZ = (maxZ + minZ) / 2;
+    /**
+     * Brings the world up to date with a ghosted airship, the airship is moved in the world from where it really is
+     * to where the ghost is in a single step. The writes are queued for the mover like any other move.
+     */
+    @SuppressWarnings("deprecation")
+    public void settleGhost() {
 
-        // Get the current location of the airships owner
-        Location playerLocation = Bukkit.getPlayer(owner).getLocation();
+        if (!ghosted) {
+            return;
+        }
+        ghosted = false;
 
-        // Get the location that is the block below the player
-        playerLocation.setY(playerLocation.getY() - 1);
+        // The airship was saved where it really is while it was ghosted
+        dirty = true;
+
+        // The ghost only ever moves (a turn settles it first), so this is the same as one long move
+        MovePlan plan = new MovePlan(blocks, originX - realOriginX, originY - realOriginY, originZ - realOriginZ);
+
+        int start = pendingWrites.size();
+        for (int i : plan.clears) {
+            pendingWrites.add(realOriginX + blocks.getX(i), realOriginY + blocks.getY(i), realOriginZ + blocks.getZ(i), Material.AIR.getId(), 0);
+        }
+        for (int i : plan.writes) {
+            pendingWrites.add(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i), blocks.getType(i), blocks.getData(i));
+        }
+        pendingWrites.sortByChunk(start, pendingWrites.size());
+    }
+
+    /**
+     * Stops the airship and throws away everything it still has to do in the world, for an airship that is being
+     * deleted. Block changes that haven't been written yet are dropped, a virtual airship is never written back into
+     * the world, the players watching a ghost are sent the blocks the world really has and the chunks the airship is
+     * holding are released.
+     *
+     * @param loader The loader the airship holds its chunks with
+     */
+    @SuppressWarnings("deprecation")
+    public void discardMoves(ChunkLoader loader) {
+
+        isMoving = false;
+        moveDeferred = false;
+        ownerTurn = null;
+
+        // Any move being prepared is for an airship that no longer exists
+        generation++;
+        preparedMove.discard();
+        preparedBlocks = null;
+
+        pendingWrites.clear();
+        ghostWrites.clear();
+
+        // The players watching the ghost see it where the world doesn't have it, and don't see the hull the world
+        // still has where the airship really is, so show them both as they really are
+        if (ghosted) {
+            ghosted = false;
+
+            Location location = scratchLocation;
+            location.setWorld(world);
+            for (String viewer : ghostViewers) {
+                Player player = Bukkit.getPlayerExact(viewer);
+                if (player == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < blocks.size(); i++) {
+                    resendBlock(player, location, originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i));
+                    resendBlock(player, location, realOriginX + blocks.getX(i), realOriginY + blocks.getY(i), realOriginZ + blocks.getZ(i));
+                }
+            }
+        }
+
+        releaseChunks(loader);
+    }
 
-        // We do not want to move the airships owner by default
-        boolean rotatePlayer = false;
+    /**
+     * Sends a player the block the world really has at a location
+     *
+     * @param player   The player to send the block to
+     * @param location A location to reuse for sending the block
+     * @param x        The X location of the block
+     * @param y        The Y location of the block
+     * @param z        The Z location of the block
+     */
+    @SuppressWarnings("deprecation")
+    private void resendBlock(Player player, Location location, int x, int y, int z) {
+        Block block = world.getBlockAt(x, y, z);
+        location.setX(x);
+        location.setY(y);
+        location.setZ(z);
+        player.sendBlockChange(location, block.getTypeId(), block.getData());
+    }
 
-        // Go through each block in the airship and rotate it
-        for (AirshipBlock block : blocks) {
+    /**
+     * Sends the changes for a ghost move to the players watching the airship, and empties the buffer
+     */
+    @SuppressWarnings("deprecation")
+    private void sendGhostWrites() {
 
-            // Get the location of the block in the airship
-            Location blockLocation = new Location(world, block.x, block.y, block.z);
+        // The location is only read while the change is sent, so one location will do for every change
+        Location location = scratchLocation;
+        location.setWorld(world);
 
-            // If this location is the same as the block below the owner (see above) then we need to move the owner
-            if (blockLocation.getBlockX() == playerLocation.getBlockX() &&
-                    blockLocation.getBlockY() == playerLocation.getBlockY() &&
-                    blockLocation.getBlockZ() == playerLocation.getBlockZ()) {
+        for (String viewer : ghostViewers) {
+            Player player = Bukkit.getPlayerExact(viewer);
+            if (player == null) {
+                continue;
+            }
 
-                // Set the move owner flag to true
-                rotatePlayer = true;
+            for (int i = 0; i < ghostWrites.size(); i++) {
+                location.setX(ghostWrites.getX(i));
+                location.setY(ghostWrites.getY(i));
+                location.setZ(ghostWrites.getZ(i));
+                player.sendBlockChange(location, ghostWrites.getType(i), ghostWrites.getData(i));
             }
+        }
 
-            // Remove the current block from the server (set to air)
-            world.getBlockAt(block.x, block.y, block.z).setType(Material.AIR);
+        ghostWrites.advance(ghostWrites.size());
+    }
 
-            // Rotate the airship block in the necessary direction about the center point
-            block.rotateBlock(turnDirection, originX, originZ);
+    /**
+     * Rotates the airship in the specified direction. The turn is queued behind any moves still waiting to be written,
+     * and the mover writes it within its budget like any other change (the airship doesn't move again until it has).
+     *
+     * @param turnDirection The direction to rotate the airship (left, right or around)
+     * @param plugin        The plugin, the airship is handed to its mover to write the turn
+     */
+    @SuppressWarnings("deprecation")
+    public void rotateAirship(TurnDirection turnDirection, AirshipPlugin plugin) {
+
+        // An airship that can't be loaded can't turn
+        if (!load()) {
+            return;
+        }
+
+        // Any prepared move is for the old shape, it is thrown away as the generation no longer matches. A ghost is
+        // settled first so the turn is written where the airship really is.
+        generation++;
+        dirty = true;
+        settleGhost();
+
+        // An owner still waiting on the last turn is turned now, so they are checked against where they should be
+        if (ownerTurn != null) {
+            turnOwner();
         }
 
-        // Go through each block in the airship again and place it on the server
-        for (AirshipBlock block : blocks) {
+        // Work out the center point of the airship (from the bounding box)
+        int pivotX = getPivotX();
+        int pivotZ = getPivotZ();
 
-            // Get the block at the new location
-            Block newBlock = world.getBlockAt(block.x, block.y, block.z);
+        // Get the current location of the airships owner
+        Location playerLocation = Bukkit.getPlayer(owner).getLocation();
 
-            // Set the type value for the block at the new location
-            newBlock.setType(block.t);
+        // Get the location that is the block below the player
+        playerLocation.setY(playerLocation.getY() - 1);
 
-            // Set the data value for the block at the new location
-            newBlock.setData(block.d);
+        // If the block below the owner is part of the airship then we need to move the owner with it
+        boolean rotatePlayer = blocks.indexOf(playerLocation.getBlockX() - originX, playerLocation.getBlockY() - originY,
+                playerLocation.getBlockZ() - originZ) != -1;
+
+        // Record the cell each block is in and what it holds before the turn, keyed by the packed location of the cell
+        final int size = blocks.size();
+        final long[] oldCells = new long[size];
+        final int[] oldContents = new int[size];
+        TransformKernel.forRange(size, new BlockRangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    oldCells[i] = BlockKey.pack(originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i));
+                    oldContents[i] = (blocks.getType(i) << 8) | (blocks.getData(i) & 0xFF);
+                }
+            }
+        });
+
+        // Keep the offset index from before the turn, it finds which block was at each offset before the turn. The
+        // store starts a new index after the turn, which is built the next time it is needed.
+        final LongIntHashMap oldIndex = blocks.getIndex();
+
+        // Rotate the airship blocks in the necessary direction about the center point
+        final int pivotOffsetX = pivotX - originX;
+        final int pivotOffsetZ = pivotZ - originZ;
+        blocks.rotate(turnDirection, pivotOffsetX, pivotOffsetZ);
+        movePlans.clear();
+
+        // The block that turns into an offset is the one that the opposite turn takes the offset to
+        final TurnDirection backDirection = turnDirection == TurnDirection.LEFT ? TurnDirection.RIGHT :
+                turnDirection == TurnDirection.RIGHT ? TurnDirection.LEFT : TurnDirection.AROUND;
+
+        // Work out which cells change, this only reads the airship so big airships do it in parallel
+        final byte[] changes = new byte[size];
+        TransformKernel.forRange(size, new BlockRangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+
+                    byte change = 0;
+
+                    // The block needs writing if its new cell held something different before the turn (the origin
+                    // doesn't change in a turn, so the offset of the cell is the same before and after)
+                    int previous = oldIndex.get(BlockKey.pack(blocks.getX(i), blocks.getY(i), blocks.getZ(i)));
+                    if (previous == LongIntHashMap.MISSING) {
+                        change |= TURN_NEW_CELL;
+                    }
+                    if (previous == LongIntHashMap.MISSING || oldContents[previous] != ((blocks.getType(i) << 8) | (blocks.getData(i) & 0xFF))) {
+                        change |= TURN_WRITE;
+                    }
+
+                    // The cell the block was in before the turn is empty unless another block has turned into it
+                    long old = oldCells[i];
+                    int oldX = BlockKey.x(old) - originX;
+                    int oldZ = BlockKey.z(old) - originZ;
+                    int fromX = AirshipBlockStore.turnX(backDirection, pivotOffsetX, pivotOffsetZ, oldX, oldZ);
+                    int fromZ = AirshipBlockStore.turnZ(backDirection, pivotOffsetX, pivotOffsetZ, oldX, oldZ);
+                    if (oldIndex.get(BlockKey.pack(fromX, BlockKey.y(old) - originY, fromZ)) == LongIntHashMap.MISSING) {
+                        change |= TURN_CLEAR;
+                    }
+
+                    changes[i] = change;
+                }
+            }
+        });
+
+        // Queue the changes and update the index, this is the only part that has to be done on the server thread
+        int writeStart = pendingWrites.size();
+        for (int i = 0; i < size; i++) {
+
+            int x = originX + blocks.getX(i);
+            int y = originY + blocks.getY(i);
+            int z = originZ + blocks.getZ(i);
+
+            // Place the rotated blocks, but only in cells that held something different before the turn
+            if (!virtual && (changes[i] & TURN_WRITE) != 0) {
+                pendingWrites.add(x, y, z, blocks.getType(i), blocks.getData(i));
+            }
+
+            // This location didn't belong to the airship before the turn
+            if ((changes[i] & TURN_NEW_CELL) != 0 && index != null) {
+                index.put(world, x, y, z, this);
+            }
+
+            // Clear the cells the airship has turned out of
+            if ((changes[i] & TURN_CLEAR) != 0) {
+                x = BlockKey.x(oldCells[i]);
+                y = BlockKey.y(oldCells[i]);
+                z = BlockKey.z(oldCells[i]);
+                if (!virtual) {
+                    pendingWrites.add(x, y, z, Material.AIR.getId(), 0);
+                }
+                if (index != null) {
+                    index.remove(world, x, y, z, this);
+                }
+            }
         }
 
+        // No cell is both placed and cleared, so the turn can be written in a single pass in chunk order. The mover
+        // writes it out within its budget.
+        pendingWrites.sortByChunk(writeStart, pendingWrites.size());
+        plugin.getMover().addAirship(this);
+
         // We need to update the direction of travel based on the existing direction
 
 
-        if (currentDirection == BlockFace.UP || currentDirection == BlockFace.DOWN) {
+        if (turnDirection == TurnDirection.AROUND) {
+
+            // Turning around always faces the opposite way
+            if (currentDirection == BlockFace.UP || currentDirection == BlockFace.DOWN) {
+                lastDirection = lastDirection.getOppositeFace();
+            } else {
+                currentDirection = currentDirection.getOppositeFace();
+            }
+        } else if (currentDirection == BlockFace.UP || currentDirection == BlockFace.DOWN) {
             switch (lastDirection) {
 
                 case NORTH:
@@ -412,11 +1361,29 @@ public class Airship {
         }
 
 
-        // If we have decided we need to move the owner then do it here
+        // If we have decided we need to move the owner then do it once the turn has been written, so they land on the
+        // turned deck
         if (rotatePlayer) {
+            ownerTurn = turnDirection;
+            ownerTurnPivotX = pivotX;
+            ownerTurnPivotZ = pivotZ;
+            if (pendingWrites.isEmpty()) {
+                turnOwner();
+            }
+        }
+    }
+
+    /**
+     * Turns the owner with the airship, for a turn that the owner was standing on
+     */
+    private void turnOwner() {
+
+        TurnDirection turnDirection = ownerTurn;
+        ownerTurn = null;
 
-            // Teleport the player to the new location
-            rotatePlayer(turnDirection, originX, originZ, Bukkit.getPlayer(owner));
+        Player player = Bukkit.getPlayer(owner);
+        if (player != null) {
+            rotatePlayer(turnDirection, ownerTurnPivotX, ownerTurnPivotZ, player);
         }
     }
 
@@ -440,57 +1407,211 @@ public class Airship {
         if (turnDirection == TurnDirection.RIGHT) {
             x2 = -z;
             z2 = x;
-        } else {
+        } else if (turnDirection == TurnDirection.LEFT) {
             x2 = z;
             z2 = -x;
+        } else {
+            x2 = -x;
+            z2 = -z;
         }
 
         // Create a new location for the player based on the calculations above
         Location newLocation = new Location(world, x2 + originX, player.getLocation().getY(), z2 + originZ);
 
         // Set the new Yaw of the player
-        newLocation.setYaw(player.getLocation().getYaw() + (turnDirection == TurnDirection.LEFT ? -90 : 90));
+        newLocation.setYaw(player.getLocation().getYaw() + (turnDirection == TurnDirection.LEFT ? -90 : turnDirection == TurnDirection.RIGHT ? 90 : 180));
 
         // Teleport the player to the new location
         player.teleport(newLocation);
 
     }
 
-    public void saveAirship(String fileName) throws IOException {
+    /**
+     * Saves the airship to a store. This writes the airship on the calling thread, the AirshipSaver saves airships in
+     * the background.
+     *
+     * @param store The store to save the airship in
+     * @throws IOException Thrown if the airship can't be written
+     */
+    public void saveAirship(AirshipStore store) throws IOException {
+        if (!load()) {
+            throw new IOException("The blocks of airship '" + name + "' could not be loaded");
+        }
+        store.write(name, snapshot());
+    }
 
-        // Create a file for this airship
-        File file = new File("./airships/" + fileName);
+    /**
+     * Takes a copy of everything that is saved for the airship, the copy can be written out on another thread. The
+     * airship is no longer dirty once the copy has been taken.
+     *
+     * @return A copy of the airship, as it would be saved
+     */
+    public AirshipFile snapshot() {
+
+        AirshipFile contents = new AirshipFile();
+        contents.owner = owner;
+        contents.world = world.getName();
+        contents.direction = currentDirection;
+
+        // The airship is saved where the world has it, a ghost is only seen by the players watching it so a ghosted
+        // airship is saved where it really is. A virtual airship isn't in the world at all, it is saved as virtual and
+        // written back into the world once there is somewhere clear for it.
+        contents.virtual = virtual;
+        contents.originX = ghosted ? realOriginX : originX;
+        contents.originY = ghosted ? realOriginY : originY;
+        contents.originZ = ghosted ? realOriginZ : originZ;
+        contents.blocks = blocks.copy();
+
+        dirty = false;
+        return contents;
+    }
 
-        // Check if the file exists, if not create a new one
-        if (!file.exists()) file.createNewFile();
+    /**
+     * @return True if the airship has changed since it was last saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
 
-        // Get a BufferedWriter to save the airship
-        BufferedWriter writer = new BufferedWriter(new FileWriter(file.getAbsoluteFile()));
+    /**
+     * Marks the airship as changed, so it is saved again at the next autosave
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean containsBlock(Block block) {
+        return boundsContain(block.getX(), block.getY(), block.getZ()) && load() &&
+                blocks.indexOf(block.getX() - originX, block.getY() - originY, block.getZ() - originZ) != -1;
+    }
 
-        writer.write(owner);
-        writer.newLine();
-        writer.write(world.getName());
-        writer.newLine();
-        writer.write(currentDirection.name());
-        writer.newLine();
-        writer.write(String.valueOf(blocks.size()));
-        writer.newLine();
+    /**
+     * Checks if a location is inside the bounding box of the airship, this is a quick test before looking for a block
+     *
+     * @param x The X location to check
+     * @param y The Y location to check
+     * @param z The Z location to check
+     * @return True if the location is inside the bounding box
+     */
+    public boolean boundsContain(int x, int y, int z) {
+        return x >= getMinX() && x <= getMaxX() && y >= getMinY() && y <= getMaxY() && z >= getMinZ() && z <= getMaxZ();
+    }
+
+    // The bounding box of the airship in the world, this is kept up to date as the airship moves and turns (and comes
+    // from the header of the file until the blocks are loaded)
+    public int getMinX() {
+        return originX + (blocks != null ? blocks.getMinX() : header.minX);
+    }
 
-        for (AirshipBlock block : blocks) {
-            writer.write(String.format("%d,%d,%d,%s,%d", block.x, block.y, block.z, block.t, block.d));
-            writer.newLine();
+    public int getMinY() {
+        return originY + (blocks != null ? blocks.getMinY() : header.minY);
+    }
+
+    public int getMinZ() {
+        return originZ + (blocks != null ? blocks.getMinZ() : header.minZ);
+    }
+
+    public int getMaxX() {
+        return originX + (blocks != null ? blocks.getMaxX() : header.maxX);
+    }
+
+    public int getMaxY() {
+        return originY + (blocks != null ? blocks.getMaxY() : header.maxY);
+    }
+
+    public int getMaxZ() {
+        return originZ + (blocks != null ? blocks.getMaxZ() : header.maxZ);
+    }
+
+    /**
+     * @return The X location the airship turns about, the center of the bounding box
+     */
+    public int getPivotX() {
+        return (getMaxX() + getMinX()) / 2;
+    }
+
+    /**
+     * @return The Z location the airship turns about, the center of the bounding box
+     */
+    public int getPivotZ() {
+        return (getMaxZ() + getMinZ()) / 2;
+    }
+
+    /**
+     * @return The world this airship is in
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Finds another airship that already owns one of the cells of this airship. The index only has one owner for each
+     * cell, so a new airship must not be registered over one that is already there.
+     *
+     * @param index The index to look in
+     * @return The first other airship found that owns one of the cells, or null if none do
+     */
+    public Airship getOverlappingAirship(AirshipIndex index) {
+
+        for (int i = 0; i < blocks.size(); i++) {
+            Airship owner = index.getAirship(world, originX + blocks.getX(i), originY + blocks.getY(i), originZ + blocks.getZ(i));
+            if (owner != null && owner != this) {
+                return owner;
+            }
         }
 
-        writer.flush();
-        writer.close();
+        return null;
     }
 
-    public boolean containsBlock(Block block) {
-        for (AirshipBlock airshipBlock : blocks) {
-            if (airshipBlock.equals(block)) {
-                return true;
+    /**
+     * Registers every block of this airship in the index, the airship keeps its entries up to date from then on
+     *
+     * @param index The index to register the airship in
+     */
+    public void addToIndex(AirshipIndex index) {
+        this.index = index;
+
+        // Until the blocks are loaded the index only knows the bounding box of the airship
+        if (blocks == null) {
+            index.addUnloaded(this);
+        } else {
+            updateIndex(true);
+        }
+    }
+
+    /**
+     * Removes every block of this airship from the index it is registered in (used when the airship is deleted)
+     */
+    public void removeFromIndex() {
+        if (blocks != null) {
+            updateIndex(false);
+        } else if (index != null) {
+            index.removeUnloaded(this);
+        }
+        index = null;
+    }
+
+    /**
+     * Adds or removes every block of the airship at its current location in the index
+     *
+     * @param add True to add the blocks to the index, false to remove them
+     */
+    private void updateIndex(boolean add) {
+
+        // Nothing to do if we aren't registered, or the world for this airship isn't loaded
+        if (index == null || world == null) {
+            return;
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            int x = originX + blocks.getX(i);
+            int y = originY + blocks.getY(i);
+            int z = originZ + blocks.getZ(i);
+            if (add) {
+                index.put(world, x, y, z, this);
+            } else {
+                index.remove(world, x, y, z, this);
             }
         }
-        return false;
     }
 }
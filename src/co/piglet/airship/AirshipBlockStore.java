@@ -0,0 +1,306 @@
+package co.piglet.airship;
+
+import java.util.Arrays;
+
+/**
+ * Stores the blocks of an airship as parallel primitive arrays rather than one object per block, with the Material
+ * stored as its type id. Block locations are stored as offsets from the origin of the airship, so they don't change
+ * when the airship moves.
+ * <p/>
+ * An object per block costs 32 bytes (a 12 byte header, three ints, a byte and a Material reference, padded) plus a 4
+ * byte reference from the ArrayList, so 36 bytes and one object for the GC to trace per block. Here a block costs 15
+ * bytes (three ints, a short and a byte) spread over five arrays, so a 5000 block airship is 75KB in 5 objects
+ * instead of 180KB in 5000.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipBlockStore {
+
+    // The offset of each block from the origin of the airship
+    private int[] x;
+    private int[] y;
+    private int[] z;
+
+    // The type id of each block (see Material.getId)
+    private short[] type;
+
+    // The data value of each block (color etc..)
+    private byte[] data;
+
+    // The number of blocks in the store
+    private int size;
+
+    // The bounding box of the offsets, kept up to date as blocks are added and rotated
+    private int minX = Integer.MAX_VALUE;
+    private int minY = Integer.MAX_VALUE;
+    private int minZ = Integer.MAX_VALUE;
+    private int maxX = Integer.MIN_VALUE;
+    private int maxY = Integer.MIN_VALUE;
+    private int maxZ = Integer.MIN_VALUE;
+
+    // Index from the packed offset of a block (see BlockKey) to its index in the arrays, built when first needed
+    private LongIntHashMap index;
+
+    /**
+     * Creates an empty store
+     *
+     * @param capacity The number of blocks we expect to store
+     */
+    public AirshipBlockStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        x = new int[capacity];
+        y = new int[capacity];
+        z = new int[capacity];
+        type = new short[capacity];
+        data = new byte[capacity];
+    }
+
+    /**
+     * Adds a block to the end of the store
+     *
+     * @param x    The blocks X offset from the origin
+     * @param y    The blocks Y offset from the origin
+     * @param z    The blocks Z offset from the origin
+     * @param type The blocks type id
+     * @param data The blocks data value (color etc..)
+     */
+    public void add(int x, int y, int z, int type, int data) {
+
+        // Grow the arrays if they are full
+        if (size == this.x.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.type = Arrays.copyOf(this.type, capacity);
+            this.data = Arrays.copyOf(this.data, capacity);
+        }
+
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        this.type[size] = (short) type;
+        this.data[size] = (byte) data;
+        size++;
+
+        // Grow the bounding box to include the new block
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+
+        // The offset index no longer covers every block
+        index = null;
+    }
+
+    /**
+     * Copies the store, the copy doesn't share any arrays with this store so it can be read on another thread while
+     * this store changes
+     *
+     * @return A copy of the store
+     */
+    public AirshipBlockStore copy() {
+        AirshipBlockStore copy = new AirshipBlockStore(size);
+        System.arraycopy(x, 0, copy.x, 0, size);
+        System.arraycopy(y, 0, copy.y, 0, size);
+        System.arraycopy(z, 0, copy.z, 0, size);
+        System.arraycopy(type, 0, copy.type, 0, size);
+        System.arraycopy(data, 0, copy.data, 0, size);
+        copy.size = size;
+        copy.minX = minX;
+        copy.minY = minY;
+        copy.minZ = minZ;
+        copy.maxX = maxX;
+        copy.maxY = maxY;
+        copy.maxZ = maxZ;
+        return copy;
+    }
+
+    /**
+     * @return The number of blocks in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getX(int index) {
+        return x[index];
+    }
+
+    public int getY(int index) {
+        return y[index];
+    }
+
+    public int getZ(int index) {
+        return z[index];
+    }
+
+    public int getType(int index) {
+        return type[index];
+    }
+
+    public byte getData(int index) {
+        return data[index];
+    }
+
+    // The bounding box of the offsets in the store, an empty store has no blocks to bound so its box is just the origin
+    public int getMinX() {
+        return size == 0 ? 0 : minX;
+    }
+
+    public int getMinY() {
+        return size == 0 ? 0 : minY;
+    }
+
+    public int getMinZ() {
+        return size == 0 ? 0 : minZ;
+    }
+
+    public int getMaxX() {
+        return size == 0 ? 0 : maxX;
+    }
+
+    public int getMaxY() {
+        return size == 0 ? 0 : maxY;
+    }
+
+    public int getMaxZ() {
+        return size == 0 ? 0 : maxZ;
+    }
+
+    /**
+     * Rotates every block in the store in the specified direction about the pivot offsets supplied. Each block is
+     * rotated on its own, so large stores are rotated in parallel (see TransformKernel).
+     *
+     * @param turnDirection The direction we are trying to rotate the blocks in
+     * @param pivotX        The x offset we are rotating about
+     * @param pivotZ        The z offset we are rotating about
+     */
+    public void rotate(final TurnDirection turnDirection, final int pivotX, final int pivotZ) {
+
+        // There is nothing to turn in an empty store, and its bounding box has to stay empty for the next add
+        if (size == 0) {
+            return;
+        }
+
+        TransformKernel.forRange(size, new BlockRangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+
+                    // Set the new offset of the block
+                    int oldX = x[i];
+                    x[i] = turnX(turnDirection, pivotX, pivotZ, oldX, z[i]);
+                    z[i] = turnZ(turnDirection, pivotX, pivotZ, oldX, z[i]);
+
+                    // Get the correct data value for the block from the rotation tables
+                    data[i] = RotationTable.rotate(turnDirection, type[i], data[i]);
+                }
+            }
+        });
+
+        // Every offset has changed so the index has to be rebuilt, the old index is left as it was (see getIndex)
+        index = null;
+
+        // Turn the corners of the bounding box in the same way, the box stays axis aligned
+        int dx1 = minX - pivotX;
+        int dz1 = minZ - pivotZ;
+        int dx2 = maxX - pivotX;
+        int dz2 = maxZ - pivotZ;
+        if (turnDirection == TurnDirection.RIGHT) {
+            minX = pivotX - dz2;
+            maxX = pivotX - dz1;
+            minZ = pivotZ + dx1;
+            maxZ = pivotZ + dx2;
+        } else if (turnDirection == TurnDirection.LEFT) {
+            minX = pivotX + dz1;
+            maxX = pivotX + dz2;
+            minZ = pivotZ - dx2;
+            maxZ = pivotZ - dx1;
+        } else {
+            minX = pivotX - dx2;
+            maxX = pivotX - dx1;
+            minZ = pivotZ - dz2;
+            maxZ = pivotZ - dz1;
+        }
+    }
+
+    /**
+     * Works out the X offset of a block after a turn
+     *
+     * @param turnDirection The direction of the turn
+     * @param pivotX        The x offset the turn is about
+     * @param pivotZ        The z offset the turn is about
+     * @param x             The X offset of the block before the turn
+     * @param z             The Z offset of the block before the turn
+     * @return The X offset of the block after the turn
+     */
+    public static int turnX(TurnDirection turnDirection, int pivotX, int pivotZ, int x, int z) {
+        if (turnDirection == TurnDirection.RIGHT) {
+            return pivotX - (z - pivotZ);
+        } else if (turnDirection == TurnDirection.LEFT) {
+            return pivotX + (z - pivotZ);
+        }
+        return pivotX - (x - pivotX);
+    }
+
+    /**
+     * Works out the Z offset of a block after a turn
+     *
+     * @param turnDirection The direction of the turn
+     * @param pivotX        The x offset the turn is about
+     * @param pivotZ        The z offset the turn is about
+     * @param x             The X offset of the block before the turn
+     * @param z             The Z offset of the block before the turn
+     * @return The Z offset of the block after the turn
+     */
+    public static int turnZ(TurnDirection turnDirection, int pivotX, int pivotZ, int x, int z) {
+        if (turnDirection == TurnDirection.RIGHT) {
+            return pivotZ + (x - pivotX);
+        } else if (turnDirection == TurnDirection.LEFT) {
+            return pivotZ - (x - pivotX);
+        }
+        return pivotZ - (z - pivotZ);
+    }
+
+    /**
+     * Finds the block at the specified offset
+     *
+     * @param x The X offset to look for
+     * @param y The Y offset to look for
+     * @param z The Z offset to look for
+     * @return The index of the block, or -1 if there is no block in the store at this offset
+     */
+    public int indexOf(int x, int y, int z) {
+        buildIndex();
+        return index.get(BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * Gets the offset index, from packed offsets (see BlockKey) to the index of the block. When the blocks change the
+     * store builds a new index rather than changing this one, so an index taken before a turn can still be used to
+     * find the block that was at an offset before the turn.
+     *
+     * @return The offset index
+     */
+    public LongIntHashMap getIndex() {
+        buildIndex();
+        return index;
+    }
+
+    /**
+     * Builds the offset index if the blocks have changed since it was last built. Once it is built, indexOf only
+     * reads from the store, so this must be called before indexOf is used from more than one thread.
+     */
+    public void buildIndex() {
+        if (index == null) {
+            LongIntHashMap offsets = new LongIntHashMap(size);
+            for (int i = 0; i < size; i++) {
+                offsets.put(BlockKey.pack(x[i], y[i], z[i]), i);
+            }
+            index = offsets;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package co.piglet.airship;
+
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads and writes .airship files. Airships are saved in a binary format:
+ * <p/>
+ * A header of the magic number, the format version, flags, the owner, world and direction, the origin, the number of
+ * blocks and the bounding box of the offsets. Then a palette of the distinct Material and data value pairs in the
+ * airship, and then the blocks, each one as its index in the palette and the difference between its offset and the
+ * offset of the block before it. The palette index and the differences are written as variable length ints (the
+ * differences zigzag encoded), and as the scanner stores neighbouring blocks together most blocks take 4 bytes. The
+ * palette and blocks can be compressed with Deflate, the header never is so it can be read on its own.
+ * <p/>
+ * The old text format (one line per block) is still read, airships are written in the binary format the next time
+ * they are saved.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipFile {
+
+    // The first four bytes of a binary airship file ("PASF")
+    public static final int MAGIC = 0x50415346;
+
+    // The version of the binary format written by this class
+    public static final int VERSION = 1;
+
+    // Set in the flags if the palette and blocks are compressed
+    private static final int FLAG_DEFLATE = 1;
+
+    // Set in the flags if the airship was travelling virtually (it isn't in the world) when it was saved
+    private static final int FLAG_VIRTUAL = 2;
+
+    // The flags this version of the format knows about
+    private static final int KNOWN_FLAGS = FLAG_DEFLATE | FLAG_VIRTUAL;
+
+    // The player who owns the airship
+    public String owner;
+
+    // The name of the world the airship is in
+    public String world;
+
+    // The direction the airship is facing
+    public BlockFace direction;
+
+    // Was the airship travelling virtually? If so the world doesn't hold it at the origin
+    public boolean virtual;
+
+    // The origin of the airship in the world
+    public int originX;
+    public int originY;
+    public int originZ;
+
+    // The number of blocks in the airship
+    public int blockCount;
+
+    // The bounding box of the block offsets
+    public int minX;
+    public int minY;
+    public int minZ;
+    public int maxX;
+    public int maxY;
+    public int maxZ;
+
+    // The blocks in the airship, null if only the header has been read
+    public AirshipBlockStore blocks;
+
+    /**
+     * Reads an airship file in either format
+     *
+     * @param file       The file to read
+     * @param headerOnly True to only read the header (the blocks are left null)
+     * @return The contents of the file
+     * @throws IOException Thrown if the file can't be read or is corrupt
+     */
+    public static AirshipFile read(File file, boolean headerOnly) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in, file.getName(), headerOnly);
+        }
+    }
+
+    /**
+     * Reads an airship in either format from a stream
+     *
+     * @param stream     The stream to read from, this is not closed
+     * @param source     Where the airship is being read from (for errors)
+     * @param headerOnly True to only read the header (the blocks are left null)
+     * @return The contents of the airship
+     * @throws IOException Thrown if the airship can't be read or is corrupt
+     */
+    public static AirshipFile read(InputStream stream, String source, boolean headerOnly) throws IOException {
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 65536));
+
+            // Binary files start with the magic number, a version and the flags, anything else is the old text format.
+            // The magic number is printable ("PASF"), so an owner name in a text file could start with it, but the
+            // version and flags that follow are control characters that can't appear in the text format.
+            in.mark(6);
+            if (in.readInt() == MAGIC) {
+                int version = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                if (version >= 1 && version < ' ' && version != '\n' && version != '\r' && flags < ' ') {
+                    return readBinary(in, version, flags, headerOnly);
+                }
+            }
+            in.reset();
+            return readText(new BufferedReader(new InputStreamReader(in)), headerOnly);
+
+        } catch (EOFException | UTFDataFormatException | ZipException | IllegalArgumentException | NullPointerException |
+                IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new CorruptAirshipException("Corrupt airship file " + source + ": " + e, e);
+        }
+    }
+
+    /**
+     * Reads the rest of a binary airship file after the magic number, version and flags
+     *
+     * @param in         The stream to read from
+     * @param version    The version of the format the file was written in
+     * @param flags      The flags of the file
+     * @param headerOnly True to stop after the header
+     * @return The contents of the file
+     * @throws IOException Thrown if the file can't be read or is corrupt
+     */
+    private static AirshipFile readBinary(DataInputStream in, int version, int flags, boolean headerOnly) throws IOException {
+
+        if (version > VERSION || (flags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("Unsupported airship file version " + version + " (flags " + flags + ")");
+        }
+
+        AirshipFile contents = new AirshipFile();
+        contents.virtual = (flags & FLAG_VIRTUAL) != 0;
+        contents.owner = in.readUTF();
+        contents.world = in.readUTF();
+        contents.direction = BlockFace.valueOf(in.readUTF());
+        contents.originX = in.readInt();
+        contents.originY = in.readInt();
+        contents.originZ = in.readInt();
+        contents.blockCount = in.readInt();
+        contents.minX = in.readInt();
+        contents.minY = in.readInt();
+        contents.minZ = in.readInt();
+        contents.maxX = in.readInt();
+        contents.maxY = in.readInt();
+        contents.maxZ = in.readInt();
+
+        if (headerOnly) {
+            return contents;
+        }
+
+        if ((flags & FLAG_DEFLATE) == 0) {
+            readBlocks(in, contents);
+            return contents;
+        }
+
+        // The inflater holds native memory until it is ended, so end it as soon as the blocks are read
+        Inflater inflater = new Inflater();
+        try {
+            readBlocks(new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, inflater), 65536)), contents);
+        } finally {
+            inflater.end();
+        }
+        return contents;
+    }
+
+    /**
+     * Reads the palette and the blocks of a binary airship file
+     *
+     * @param body     The stream to read from, positioned after the header
+     * @param contents The header already read, the blocks are added to it
+     * @throws IOException Thrown if the file can't be read or is corrupt
+     */
+    @SuppressWarnings("deprecation")
+    private static void readBlocks(DataInputStream body, AirshipFile contents) throws IOException {
+
+        // The palette of type ids and data values, materials are stored by name so the file doesn't depend on the ids
+        int paletteSize = readVarInt(body);
+        short[] paletteType = new short[paletteSize];
+        byte[] paletteData = new byte[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            paletteType[i] = (short) Material.valueOf(body.readUTF()).getId();
+            paletteData[i] = body.readByte();
+        }
+
+        // The blocks, each offset is stored as the difference from the block before
+        contents.blocks = new AirshipBlockStore(contents.blockCount);
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        for (int i = 0; i < contents.blockCount; i++) {
+            int entry = readVarInt(body);
+            x += readZigZag(body);
+            y += readZigZag(body);
+            z += readZigZag(body);
+            contents.blocks.add(x, y, z, paletteType[entry], paletteData[entry]);
+        }
+    }
+
+    /**
+     * Reads an airship file in the old text format, the first line is the owner, then the world, the direction and the
+     * number of blocks, then a line for each block of "x,y,z,MATERIAL,data" in world locations. The first block is the
+     * origin of the airship.
+     *
+     * @param reader     The reader to read from
+     * @param headerOnly True to only keep the header, the blocks are still read to find the bounding box
+     * @return The contents of the file
+     * @throws IOException Thrown if the file can't be read or is corrupt
+     */
+    @SuppressWarnings("deprecation")
+    private static AirshipFile readText(BufferedReader reader, boolean headerOnly) throws IOException {
+
+        AirshipFile contents = new AirshipFile();
+        contents.owner = reader.readLine();
+        contents.world = reader.readLine();
+        contents.direction = BlockFace.valueOf(reader.readLine());
+
+        int airshipBlockCount = Integer.valueOf(reader.readLine());
+
+        // Create the store to keep the airship in
+        AirshipBlockStore blocks = new AirshipBlockStore(airshipBlockCount);
+
+        for (int i = 0; i < airshipBlockCount; i++) {
+            String[] blockData = reader.readLine().split(",");
+            int x = Integer.valueOf(blockData[0]);
+            int y = Integer.valueOf(blockData[1]);
+            int z = Integer.valueOf(blockData[2]);
+            Material m = Material.valueOf(blockData[3]);
+            int d = Integer.valueOf(blockData[4]);
+
+            // The file stores world locations, the first block becomes the origin of the airship
+            if (i == 0) {
+                contents.originX = x;
+                contents.originY = y;
+                contents.originZ = z;
+            }
+
+            // Older files include the air around the hull, moving the airship no longer needs it
+            if (m == Material.AIR) {
+                continue;
+            }
+
+            blocks.add(x - contents.originX, y - contents.originY, z - contents.originZ, m.getId(), d);
+        }
+
+        contents.blockCount = blocks.size();
+        contents.minX = blocks.getMinX();
+        contents.minY = blocks.getMinY();
+        contents.minZ = blocks.getMinZ();
+        contents.maxX = blocks.getMaxX();
+        contents.maxY = blocks.getMaxY();
+        contents.maxZ = blocks.getMaxZ();
+        contents.blocks = headerOnly ? null : blocks;
+
+        return contents;
+    }
+
+    /**
+     * Writes an airship in the binary format
+     *
+     * @param out      The stream to write to, this is not closed
+     * @param contents The airship to write (the blocks must be set)
+     * @param compress True to compress the palette and blocks
+     * @throws IOException Thrown if the airship can't be written
+     */
+    public static void write(OutputStream out, AirshipFile contents, boolean compress) throws IOException {
+
+        AirshipBlockStore blocks = contents.blocks;
+        DataOutputStream header = new DataOutputStream(out);
+
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte((compress ? FLAG_DEFLATE : 0) | (contents.virtual ? FLAG_VIRTUAL : 0));
+        header.writeUTF(contents.owner);
+        header.writeUTF(contents.world);
+        header.writeUTF(contents.direction.name());
+        header.writeInt(contents.originX);
+        header.writeInt(contents.originY);
+        header.writeInt(contents.originZ);
+        header.writeInt(blocks.size());
+        header.writeInt(blocks.getMinX());
+        header.writeInt(blocks.getMinY());
+        header.writeInt(blocks.getMinZ());
+        header.writeInt(blocks.getMaxX());
+        header.writeInt(blocks.getMaxY());
+        header.writeInt(blocks.getMaxZ());
+        header.flush();
+
+        if (!compress) {
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(out, 65536));
+            writeBlocks(body, blocks);
+            body.flush();
+            return;
+        }
+
+        // The deflater holds native memory until it is ended, so end it as soon as the blocks are written
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 65536);
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(deflated, 65536));
+            writeBlocks(body, blocks);
+            body.flush();
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the palette and the blocks of a binary airship file
+     *
+     * @param body   The stream to write to, positioned after the header
+     * @param blocks The blocks to write
+     * @throws IOException Thrown if the blocks can't be written
+     */
+    @SuppressWarnings("deprecation")
+    private static void writeBlocks(DataOutputStream body, AirshipBlockStore blocks) throws IOException {
+
+        // Build the palette, each type id and data value pair is given the next free entry the first time it is seen
+        LongIntHashMap entries = new LongIntHashMap(64);
+        int[] palette = new int[64];
+        int paletteSize = 0;
+        int[] blockEntries = new int[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            int key = (blocks.getType(i) << 8) | (blocks.getData(i) & 0xFF);
+            int entry = entries.get(key);
+            if (entry == LongIntHashMap.MISSING) {
+                if (paletteSize == palette.length) {
+                    palette = Arrays.copyOf(palette, paletteSize * 2);
+                }
+                entry = paletteSize;
+                palette[paletteSize++] = key;
+                entries.put(key, entry);
+            }
+            blockEntries[i] = entry;
+        }
+
+        writeVarInt(body, paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            body.writeUTF(Material.getMaterial(palette[i] >> 8).name());
+            body.writeByte(palette[i] & 0xFF);
+        }
+
+        // Write each block as its palette entry and the difference from the offset of the block before
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            writeVarInt(body, blockEntries[i]);
+            writeZigZag(body, blocks.getX(i) - x);
+            writeZigZag(body, blocks.getY(i) - y);
+            writeZigZag(body, blocks.getZ(i) - z);
+            x = blocks.getX(i);
+            y = blocks.getY(i);
+            z = blocks.getZ(i);
+        }
+    }
+
+    /**
+     * Writes an int using 7 bits per byte, with the top bit set on every byte but the last
+     *
+     * @param out   The stream to write to
+     * @param value The value to write (treated as unsigned)
+     * @throws IOException Thrown if the value can't be written
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes a signed int as a variable length int, small negative values are kept small by zigzag encoding them
+     * (0, -1, 1, -2.. become 0, 1, 2, 3..)
+     *
+     * @param out   The stream to write to
+     * @param value The value to write
+     * @throws IOException Thrown if the value can't be written
+     */
+    private static void writeZigZag(DataOutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * @param in The stream to read from
+     * @return The next variable length int in the stream
+     * @throws IOException Thrown if the value can't be read or is too long
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptAirshipException("Variable length int is too long");
+    }
+
+    /**
+     * @param in The stream to read from
+     * @return The next zigzag encoded int in the stream
+     * @throws IOException Thrown if the value can't be read
+     */
+    private static int readZigZag(DataInputStream in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,223 @@
+package co.piglet.airship;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Server wide index from block locations to the airship that owns them. The airships keep this up to date as they
+ * are created, moved, rotated and deleted, so finding the airship at a location takes constant time no matter how
+ * many airships or blocks are loaded. Alongside the owners, each world has an OccupancyMap of the same cells, which is
+ * a cheaper way to check whether a cell is taken when we don't need to know by whom.
+ * <p/>
+ * Airships that haven't been loaded yet (see Airship.load) are only known by their bounding box, they are listed under
+ * each chunk the box covers. Looking up a block in the bounding box of one of these loads it first, so callers never
+ * see the difference, and a lookup only has to check the unloaded airships listed under its own chunks.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipIndex {
+
+    // The owner of each airship block, one map per world keyed by the packed location of the block (see BlockKey)
+    private final HashMap<UUID, LongObjectHashMap<Airship>> worlds = new HashMap<>();
+
+    // The cells that belong to any airship, one bitmap per world
+    private final HashMap<UUID, OccupancyMap> occupancy = new HashMap<>();
+
+    // The airships whose blocks haven't been loaded yet, listed under each chunk their bounding box covers (keyed by the
+    // packed chunk, see BlockKey.chunk), one map per world
+    private final HashMap<UUID, LongObjectHashMap<ArrayList<Airship>>> unloaded = new HashMap<>();
+
+    // The number of airships whose blocks haven't been loaded yet
+    private int unloadedCount;
+
+    /**
+     * Gets the airship that owns the block at the specified location
+     *
+     * @param world The world the block is in
+     * @param x     The X location of the block
+     * @param y     The Y location of the block
+     * @param z     The Z location of the block
+     * @return The airship that owns the block, or null if the block is not part of an airship
+     */
+    public Airship getAirship(World world, int x, int y, int z) {
+        loadWithin(world, x, y, z, x, y, z);
+        LongObjectHashMap<Airship> blocks = worlds.get(world.getUID());
+        return blocks == null ? null : blocks.get(BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * Checks if the block at the specified location belongs to any airship
+     *
+     * @param world The world the block is in
+     * @param x     The X location of the block
+     * @param y     The Y location of the block
+     * @param z     The Z location of the block
+     * @return True if the block belongs to an airship
+     */
+    public boolean isOccupied(World world, int x, int y, int z) {
+        OccupancyMap cells = occupancy.get(world.getUID());
+        return cells != null && cells.isOccupied(x, y, z);
+    }
+
+    /**
+     * Records that the block at the specified location belongs to an airship
+     *
+     * @param world   The world the block is in
+     * @param x       The X location of the block
+     * @param y       The Y location of the block
+     * @param z       The Z location of the block
+     * @param airship The airship that owns the block
+     */
+    public void put(World world, int x, int y, int z, Airship airship) {
+        LongObjectHashMap<Airship> blocks = worlds.get(world.getUID());
+        if (blocks == null) {
+            blocks = new LongObjectHashMap<>(4096);
+            worlds.put(world.getUID(), blocks);
+            occupancy.put(world.getUID(), new OccupancyMap());
+        }
+        blocks.put(BlockKey.pack(x, y, z), airship);
+        occupancy.get(world.getUID()).set(x, y, z);
+    }
+
+    /**
+     * Removes the block at the specified location from the index, if it belongs to the specified airship
+     *
+     * @param world   The world the block is in
+     * @param x       The X location of the block
+     * @param y       The Y location of the block
+     * @param z       The Z location of the block
+     * @param airship The airship that is giving up the block
+     */
+    public void remove(World world, int x, int y, int z, Airship airship) {
+        LongObjectHashMap<Airship> blocks = worlds.get(world.getUID());
+        if (blocks == null) {
+            return;
+        }
+
+        // Another airship may have taken this location already, if so we leave it alone
+        long key = BlockKey.pack(x, y, z);
+        if (blocks.get(key) == airship) {
+            blocks.remove(key);
+            occupancy.get(world.getUID()).clear(x, y, z);
+        }
+    }
+
+    /**
+     * Registers an airship whose blocks haven't been loaded yet, only its bounding box is known until it is loaded
+     *
+     * @param airship The airship to register
+     */
+    public void addUnloaded(Airship airship) {
+
+        // An airship in a world that isn't loaded can't be looked up anyway
+        World world = airship.getWorld();
+        if (world == null) {
+            return;
+        }
+
+        LongObjectHashMap<ArrayList<Airship>> chunks = unloaded.get(world.getUID());
+        if (chunks == null) {
+            chunks = new LongObjectHashMap<>(256);
+            unloaded.put(world.getUID(), chunks);
+        }
+
+        for (int chunkX = airship.getMinX() >> 4; chunkX <= airship.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = airship.getMinZ() >> 4; chunkZ <= airship.getMaxZ() >> 4; chunkZ++) {
+                long key = BlockKey.chunk(chunkX, chunkZ);
+                ArrayList<Airship> airships = chunks.get(key);
+                if (airships == null) {
+                    airships = new ArrayList<>(2);
+                    chunks.put(key, airships);
+                }
+                airships.add(airship);
+            }
+        }
+        unloadedCount++;
+    }
+
+    /**
+     * Removes an airship registered by addUnloaded, either because it has been loaded or because it has been deleted
+     *
+     * @param airship The airship to remove
+     */
+    public void removeUnloaded(Airship airship) {
+
+        World world = airship.getWorld();
+        LongObjectHashMap<ArrayList<Airship>> chunks = world == null ? null : unloaded.get(world.getUID());
+        if (chunks == null) {
+            return;
+        }
+
+        // An unloaded airship doesn't move, so it is listed under the same chunks it was added to
+        boolean removed = false;
+        for (int chunkX = airship.getMinX() >> 4; chunkX <= airship.getMaxX() >> 4; chunkX++) {
+            for (int chunkZ = airship.getMinZ() >> 4; chunkZ <= airship.getMaxZ() >> 4; chunkZ++) {
+                long key = BlockKey.chunk(chunkX, chunkZ);
+                ArrayList<Airship> airships = chunks.get(key);
+                if (airships != null && airships.remove(airship)) {
+                    removed = true;
+                    if (airships.isEmpty()) {
+                        chunks.remove(key);
+                    }
+                }
+            }
+        }
+        if (removed) {
+            unloadedCount--;
+        }
+    }
+
+    /**
+     * Loads every airship that hasn't been loaded yet and whose bounding box overlaps the specified box, so that their
+     * blocks are in the index. Only the unloaded airships listed under the chunks of the box are checked.
+     *
+     * @param world The world the box is in
+     * @param minX  The lowest X location in the box
+     * @param minY  The lowest Y location in the box
+     * @param minZ  The lowest Z location in the box
+     * @param maxX  The highest X location in the box
+     * @param maxY  The highest Y location in the box
+     * @param maxZ  The highest Z location in the box
+     */
+    public void loadWithin(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+        if (unloadedCount == 0) {
+            return;
+        }
+        LongObjectHashMap<ArrayList<Airship>> chunks = unloaded.get(world.getUID());
+        if (chunks == null) {
+            return;
+        }
+
+        // Loading an airship takes it out of the lists, so find them all before loading any
+        ArrayList<Airship> overlapping = null;
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                ArrayList<Airship> airships = chunks.get(BlockKey.chunk(chunkX, chunkZ));
+                if (airships == null) {
+                    continue;
+                }
+                for (Airship airship : airships) {
+                    if (airship.getMinX() <= maxX && airship.getMaxX() >= minX && airship.getMinY() <= maxY &&
+                            airship.getMaxY() >= minY && airship.getMinZ() <= maxZ && airship.getMaxZ() >= minZ) {
+                        if (overlapping == null) {
+                            overlapping = new ArrayList<>(2);
+                        }
+                        if (!overlapping.contains(airship)) {
+                            overlapping.add(airship);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (overlapping != null) {
+            for (Airship airship : overlapping) {
+                airship.load();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package co.piglet.airship;
+
+/**
+ * Called on the server thread for each airship loaded from a store at startup
+ *
+ * @author Geoff Wilson
+ */
+public interface AirshipLoadCallback {
+
+    /**
+     * Called as soon as an airship has been loaded, so it can be registered straight away
+     *
+     * @param airship The airship that was loaded, only its header has been read (see Airship.load)
+     */
+    void airshipLoaded(Airship airship);
+}
@@ -0,0 +1,130 @@
+package co.piglet.airship;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Loads the airship files in the airships folder at startup. The files are read in parallel on a pool with a thread
+ * per core (but no more threads than files), and the airships are created on the calling thread in the order the files
+ * finish reading, so one large file doesn't hold up the rest. Each airship is handed to the caller to register as soon
+ * as its file has been read. A file that can't be read doesn't stop the others and the error is logged with the name of
+ * the file. A file that is corrupt is renamed with a .corrupt extension so it isn't tried again, any other error (such
+ * as a file that is locked or can't be opened) leaves the file where it is to be tried again next time.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipLoader {
+
+    /**
+     * The outcome of reading one airship file on the pool
+     */
+    private static class Result {
+        private final File file;
+        private final AirshipFile header;
+        private final Exception error;
+
+        private Result(File file, AirshipFile header, Exception error) {
+            this.file = file;
+            this.header = header;
+            this.error = error;
+        }
+    }
+
+    // The extension airship files are saved with
+    private static final String EXTENSION = ".airship";
+
+    // The extension added to files that are corrupt
+    private static final String CORRUPT_EXTENSION = ".corrupt";
+
+    /**
+     * Loads every airship file in a folder, this only reads the header of each file (see Airship.load)
+     *
+     * @param folder The folder the airship files are kept in
+     * @param store    The store the airships read their blocks from when they are first used
+     * @param logger   The logger to report files that couldn't be read to
+     * @param callback Called on the calling thread with each airship, in the order their files finish reading
+     */
+    public static void loadAll(File folder, AirshipStore store, Logger logger, AirshipLoadCallback callback) {
+
+        // List all of the airship files in the folder (if the list of files is null there are none)
+        ArrayList<File> files = new ArrayList<>();
+        File[] folderFiles = folder.listFiles();
+        for (File file : folderFiles != null ? folderFiles : new File[0]) {
+            if (file.getName().endsWith(EXTENSION)) {
+                files.add(file.getAbsoluteFile());
+            }
+        }
+
+        if (files.isEmpty()) {
+            return;
+        }
+
+        int loaded = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+
+            // Read every file on the pool, a file that can't be read is handed back with the reason
+            ExecutorCompletionService<Result> reads = new ExecutorCompletionService<>(pool);
+            for (final File file : files) {
+                reads.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        try {
+                            return new Result(file, AirshipFile.read(file, true), null);
+                        } catch (IOException | RuntimeException e) {
+                            return new Result(file, null, e);
+                        }
+                    }
+                });
+            }
+
+            // Create and hand over the airships here as each file finishes, one bad file is reported on its own
+            for (int i = 0; i < files.size(); i++) {
+                Result result = reads.take().get();
+                if (result.error instanceof CorruptAirshipException) {
+                    quarantine(result.file, result.error, logger);
+                    continue;
+                } else if (result.error != null) {
+                    logger.severe(String.format("Failed to load airship file '%s' : %s, it will be tried again next time", result.file.getName(), result.error));
+                    continue;
+                }
+
+                String name = result.file.getName().substring(0, result.file.getName().length() - EXTENSION.length());
+                callback.airshipLoaded(new Airship(name, store, result.header));
+                loaded++;
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("Interrupted while loading airships, only " + loaded + " were loaded");
+        } catch (ExecutionException e) {
+            logger.severe("Failed to load airships, only " + loaded + " were loaded : " + e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Moves a file that is corrupt out of the way, and logs why it couldn't be read
+     *
+     * @param file   The file that is corrupt
+     * @param cause  The reason it couldn't be read
+     * @param logger The logger to report the file to
+     */
+    private static void quarantine(File file, Throwable cause, Logger logger) {
+
+        File corrupt = new File(file.getPath() + CORRUPT_EXTENSION);
+        if (file.renameTo(corrupt)) {
+            logger.severe(String.format("Failed to load airship file '%s' : %s, it has been moved to '%s'", file.getName(), cause, corrupt.getName()));
+        } else {
+            logger.severe(String.format("Failed to load airship file '%s' : %s", file.getName(), cause));
+        }
+    }
+}
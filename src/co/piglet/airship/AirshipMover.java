@@ -1,32 +1,274 @@
 package co.piglet.airship;
 
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+
 /**
- * This class is called by the repeating Bukkit task to move the airship
+ * Moves every airship on the server. This is called by a single repeating Bukkit task every tick, each moving airship
+ * is given a slot in the move period so that the fleet's moves are spread over different ticks, and the block
+ * changes are written out within a budget per tick. Anything over the budget is carried over to the next tick. Before
+ * an airship moves, the chunks along its path are loaded ahead of it through the ChunkLoader, an airship that has
+ * caught up with the loader waits (checking again every tick) rather than loading chunks in the middle of a move.
+ * Airships that nobody is near (or that no player has in view) travel virtually, they are taken out of the world and
+ * only written back into it once a player comes close and the airship is somewhere clear, so a long trip over an empty
+ * part of the map costs next to nothing. Airships with nobody aboard can also be shown to nearby players as a ghost,
+ * their moves are sent to those players only and the world is updated in one go when the airship stops. The block
+ * changes for each move are worked out on a worker thread while the previous move is being written (see
+ * PreparedMove), so the server thread mostly just writes blocks.
  *
  * @author Geoff Wilson
  */
 public class AirshipMover implements Runnable {
 
-    // This is the airship we are going to move
-    private Airship airship;
+    // How much further than the virtual radius every player must be before an airship goes virtual, so a player at the
+    // edge of the radius doesn't take an airship out of the world and put it back on every move
+    private static final int VIRTUAL_MARGIN = 32;
+
+    // The number of moves a stopped virtual airship tries to come back into the world for before the mover gives up on
+    // it, it stays virtual where it is until it is started again (or the server restarts)
+    private static final int MAX_LANDING_ATTEMPTS = 10;
+
+    // The airships that are moving or still have block changes waiting to be written
+    private final ArrayList<Airship> airships = new ArrayList<>();
+
+    // The number of airships using each slot of the move period
+    private final int[] slotLoad;
+
+    // The number of ticks between each move of an airship
+    private final int movePeriod;
+
+    // The maximum number of block changes written to the world each tick
+    private final int writeBudget;
+
+    // The most time spent writing block changes each tick, in nanoseconds
+    private final long writeTime;
+
+    // Loads and holds the chunks in front of the moving airships
+    private final ChunkLoader chunkLoader;
+
+    // The number of moves ahead of each airship to load chunks for
+    private final int lookAhead;
+
+    // Airships with no player within this distance travel virtually (0 to always keep airships in the world)
+    private final int virtualRadius;
+
+    // Players within this distance of an airship with nobody aboard see its moves as a ghost (0 to turn ghosts off)
+    private final int ghostRadius;
+
+    // The number of ticks since the mover started
+    private long tick;
+
+    // The airship to start writing from next tick, so that every airship gets its turn when the budget is tight
+    private int nextWriter;
+
+    /**
+     * Creates the mover for the fleet
+     *
+     * @param movePeriod    The number of ticks between each move of an airship
+     * @param writeBudget   The maximum number of block changes written to the world each tick
+     * @param writeMillis   The most time spent writing block changes each tick, in milliseconds
+     * @param chunkLoader   The loader for the chunks in front of the moving airships
+     * @param lookAhead     The number of moves ahead of each airship to load chunks for
+     * @param virtualRadius Airships with no player within this distance travel virtually (0 to turn this off)
+     * @param ghostRadius   Players within this distance of an airship see its moves as a ghost (0 to turn this off)
+     */
+    public AirshipMover(int movePeriod, int writeBudget, int writeMillis, ChunkLoader chunkLoader, int lookAhead,
+                        int virtualRadius, int ghostRadius) {
+        this.movePeriod = Math.max(movePeriod, 1);
+        this.writeBudget = Math.max(writeBudget, 1);
+        this.writeTime = Math.max(writeMillis, 1) * 1000000L;
+        this.chunkLoader = chunkLoader;
+        this.lookAhead = Math.max(lookAhead, 1);
+        this.virtualRadius = Math.max(virtualRadius, 0);
+        this.ghostRadius = Math.max(ghostRadius, 0);
+        this.slotLoad = new int[this.movePeriod];
+    }
+
+    /**
+     * Adds an airship to the fleet, it is given the least busy slot in the move period
+     *
+     * @param airship The Airship we are going to move
+     */
+    public void addAirship(Airship airship) {
+
+        // A virtual airship that was given up on gets a fresh set of tries
+        airship.landingAttempts = 0;
+
+        // The airship might still be writing out its last move
+        if (airships.contains(airship)) {
+            return;
+        }
+
+        // Find the slot with the fewest airships, starting from the next tick so the airship moves straight away
+        int bestSlot = (int) ((tick + 1) % movePeriod);
+        for (int i = 1; i < movePeriod; i++) {
+            int slot = (int) ((tick + 1 + i) % movePeriod);
+            if (slotLoad[slot] < slotLoad[bestSlot]) {
+                bestSlot = slot;
+            }
+        }
+
+        airship.moveSlot = bestSlot;
+        slotLoad[bestSlot]++;
+        airships.add(airship);
+    }
 
     /**
-     * Creates an instance of the AirshipMover class for the specified Airship
+     * Takes an airship out of the fleet straight away, for an airship that is being deleted. Anything the airship
+     * still had to write is thrown away and the chunks it was holding are released.
      *
-     * @param airship The Airship we are trying to move.
+     * @param airship The airship to remove
      */
-    public AirshipMover(Airship airship) {
+    public void removeAirship(Airship airship) {
 
-            this.airship = airship;
+        airship.discardMoves(chunkLoader);
+
+        if (airships.remove(airship)) {
+            slotLoad[airship.moveSlot]--;
         }
+    }
+
+    /**
+     * run() function called by the Bukkit scheduler every tick to move the airships
+     */
+    @Override
+    public void run() {
+
+        tick++;
+        int slot = (int) (tick % movePeriod);
+
+        // Load the next few chunks the airships have asked for
+        chunkLoader.tick();
 
-        /**
-         * run() function called by the Bukkit scheduler to move the airship
-         */
-        @Override
-        public void run() {
+        // Move the airships whose turn it is (or who are waiting on chunks), unless they are still writing out their
+        // last move
+        for (int i = 0; i < airships.size(); i++) {
+            Airship airship = airships.get(i);
+            if (airship.hasPendingWrites()) {
+                continue;
+            }
 
-            // Move the airship in the airships current direction
+            if (airship.isVirtual()) {
+                moveVirtual(airship, slot);
+            } else if (airship.isMoving && (airship.moveSlot == slot || airship.moveDeferred)) {
+                move(airship);
+            }
+        }
+
+        // Write out the waiting block changes, taking turns until the budget or the time for this tick is used up
+        int budget = writeBudget;
+        long deadline = System.nanoTime() + writeTime;
+        int count = airships.size();
+        for (int i = 0; i < count && budget > 0 && System.nanoTime() - deadline < 0; i++) {
+            budget -= airships.get((nextWriter + i) % count).writeBlocks(budget, deadline);
+        }
+        nextWriter = count == 0 ? 0 : (nextWriter + 1) % count;
+
+        // Let go of any airships that have stopped and finished writing, and any stopped virtual airships that have run
+        // out of tries to come back into the world
+        for (int i = airships.size() - 1; i >= 0; i--) {
+            Airship airship = airships.get(i);
+            boolean landed = !airship.isVirtual() || airship.landingAttempts >= MAX_LANDING_ATTEMPTS;
+            if (!airship.isMoving && landed && !airship.hasPendingWrites()) {
+                airship.moveDeferred = false;
+                airship.releaseChunks(chunkLoader);
+                slotLoad[airship.moveSlot]--;
+                airships.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Makes the next move of an airship that is in the world. If nobody is close enough to see it, or no player has
+     * its chunks in view, the airship is taken out of the world and travels virtually instead.
+     *
+     * @param airship The airship to move
+     */
+    private void move(Airship airship) {
+
+        if (virtualRadius > 0 && (!airship.isObserved(virtualRadius + VIRTUAL_MARGIN) || !airship.chunksInUse())) {
+            airship.moveDeferred = false;
+            airship.dematerialize();
+            return;
+        }
+
+        // Wait for the chunks in front of the airship to load
+        airship.holdChunks(chunkLoader, lookAhead);
+        airship.moveDeferred = !airship.chunksLoaded(1);
+        if (airship.moveDeferred) {
+            return;
+        }
+
+        // Show the move to nearby players as a ghost if nobody is aboard, the world catches up when the airship stops
+        if (ghostRadius > 0) {
+            airship.updateGhost(ghostRadius, chunkLoader);
+        }
+
+        // Move the airship in the airships current direction
+        airship.moveAirship();
+    }
+
+    /**
+     * Makes the next move of an airship that is travelling virtually, only its origin and the index are updated. Once
+     * a player comes close and has its chunks in view (or the airship stops) its chunks are loaded and it is written
+     * back into the world, as long as nothing has ended up where the airship is. An airship that isn't clear keeps
+     * travelling virtually and tries again on its next move. A stopped airship tries again on each move until it has
+     * tried MAX_LANDING_ATTEMPTS times, then it is left virtual where it is (and saved there) and the owner is told.
+     *
+     * @param airship The airship to move
+     * @param slot    The slot of the move period for this tick
+     */
+    private void moveVirtual(Airship airship, int slot) {
+
+        if (!airship.isMoving || virtualRadius == 0 || (airship.isObserved(virtualRadius) && airship.chunksInUse())) {
+
+            // Bring the airship back into the world as soon as the chunks under it are loaded, checking again every
+            // tick while waiting for them
+            if (airship.moveSlot == slot || airship.moveDeferred) {
+                airship.holdChunks(chunkLoader, airship.isMoving ? lookAhead : 0);
+                airship.moveDeferred = !airship.chunksLoaded(0);
+                if (!airship.moveDeferred) {
+                    if (airship.canMaterialize()) {
+                        airship.landingAttempts = 0;
+                        airship.materialize();
+                        return;
+                    }
+
+                    // Only a stopped airship keeps trying the same spot, a moving one is somewhere new on every move
+                    airship.landingAttempts = airship.isMoving ? 0 : airship.landingAttempts + 1;
+                    if (airship.landingAttempts == MAX_LANDING_ATTEMPTS) {
+                        abandonLanding(airship);
+                    }
+                }
+            }
+        } else {
+
+            // Nobody can see the airship, so its chunks are free to unload
+            airship.moveDeferred = false;
+            airship.releaseChunks(chunkLoader);
+        }
+
+        if (airship.isMoving && airship.moveSlot == slot) {
             airship.moveAirship();
         }
+    }
+
+    /**
+     * Gives up on writing a stopped virtual airship back into the world, the airship stays virtual where it is and is
+     * let go of by the mover at the end of the tick. It is saved as virtual, so it is tried again when it is started or
+     * the server restarts.
+     *
+     * @param airship The airship that couldn't be written back into the world
+     */
+    private void abandonLanding(Airship airship) {
+
+        airship.markDirty();
+
+        Player player = Bukkit.getPlayer(airship.owner);
+        if (player != null) {
+            player.sendMessage(String.format("Airship '%s' has stopped somewhere that isn't clear and can't be put back, start it again to move it somewhere else", airship.name));
+        }
+    }
 }
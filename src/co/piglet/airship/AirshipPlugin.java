@@ -3,7 +3,6 @@ package co.piglet.airship;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -15,6 +14,8 @@ import redis.clients.jedis.JedisPool;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -30,6 +31,21 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
     // The collection that stores the airships present on the server
     private ConcurrentHashMap<String, Airship> airships;
 
+    // Index of which airship owns each block on the server
+    private AirshipIndex index;
+
+    // Moves every airship on the server
+    private AirshipMover mover;
+
+    // Saves the airships in the background
+    private AirshipSaver saver;
+
+    // The store the airships are saved in
+    private AirshipStore store;
+
+    // The names of airships that are currently being scanned
+    private Set<String> pendingScans;
+
     // The plugin version (always 1.0 :)
     private static final String PLUGIN_VERSION = "1.0-alpha";
 
@@ -45,43 +61,67 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
 
         // Create the collection to store the airships in
         airships = new ConcurrentHashMap<>();
+        index = new AirshipIndex();
+        pendingScans = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
         // Register this class as the event handler
         getServer().getPluginManager().registerEvents(this, this);
 
-        // Create the redis connection pool
-        redisPool = new JedisPool("127.0.0.1");
-
-        // Load the Airships
-        try {
-
-            // Get the airships folder
-            File folder = new File("./airships/");
+        // Write the default config.yml if there isn't one yet
+        saveDefaultConfig();
+
+        // Keep the chunks in front of moving airships loaded
+        ChunkLoader chunkLoader = new ChunkLoader(getConfig().getInt("chunk-loads-per-tick", 2));
+        getServer().getPluginManager().registerEvents(chunkLoader, this);
+
+        // Start the mover, this runs every tick and moves the whole fleet
+        mover = new AirshipMover(getConfig().getInt("move-period", 50), getConfig().getInt("max-block-writes-per-tick", 2000),
+                getConfig().getInt("max-write-millis-per-tick", 10), chunkLoader, getConfig().getInt("chunk-look-ahead", 4),
+                getConfig().getInt("virtual-travel-radius", 0),
+                getConfig().getBoolean("ghost-rendering", false) ? getConfig().getInt("ghost-render-radius", 128) : 0);
+        getServer().getScheduler().runTaskTimer(this, mover, 1, 1);
+
+        // Open the store the airships are saved in, either a file for each airship or the whole fleet in one file
+        File airshipFolder = new File("./airships/");
+        boolean compress = getConfig().getBoolean("compress-airship-files", true);
+        store = new FolderAirshipStore(airshipFolder, compress);
+        if (getConfig().getString("airship-storage", "folder").equals("mapped")) {
+            try {
+                store = new MappedAirshipStore(new File(airshipFolder, "fleet.dat"), compress, getLogger());
+            } catch (IOException e) {
+                getLogger().severe("Failed to open the fleet store, using the airships folder instead : " + e.getMessage());
+            }
+        }
 
-            // List all of the files in the airships folder
-            File[] airshipFiles = folder.listFiles();
+        // Start the autosave, this saves the airships that have changed in the background
+        saver = new AirshipSaver(this, airships, store);
+        int autosaveInterval = getConfig().getInt("autosave-interval", 6000);
+        if (autosaveInterval > 0) {
+            getServer().getScheduler().runTaskTimer(this, saver, autosaveInterval, autosaveInterval);
+        }
 
-            // Loop over each file in the airships folder (if the list of files is null then create a dummy 0 length array)
-            for (File airship : airshipFiles != null ? airshipFiles : new File[0]) {
+        // Create the redis connection pool
+        redisPool = new JedisPool("127.0.0.1");
 
-                // Check that the file ends with .airship
-                if (airship.getName().endsWith(".airship")) {
+        // Load the Airships, only the header of each one is read and each is registered here as soon as it has been read
+        store.loadAll(getLogger(), new AirshipLoadCallback() {
+            @Override
+            public void airshipLoaded(Airship loadedAirship) {
 
-                    // Call the File based Airship constructor to load the file
-                    Airship loadedAirship = new Airship(airship.getAbsoluteFile());
+                // Set this as the owning plugin for the loaded airship
+                loadedAirship.owningPlugin = AirshipPlugin.this;
 
-                    // Set this as the owning plugin for the loaded airship
-                    loadedAirship.owningPlugin = this;
+                // Add the airship to the collection of active airships
+                airships.put(loadedAirship.name, loadedAirship);
+                loadedAirship.addToIndex(index);
 
-                    // Add the airship to the collection of active airships
-                    airships.put(airship.getName().split("\\.")[0], loadedAirship);
+                // An airship that was travelling virtually isn't in the world, the mover writes it back in once the
+                // chunks under it are loaded and nothing is in the way
+                if (loadedAirship.isVirtual() && loadedAirship.getWorld() != null && loadedAirship.load()) {
+                    mover.addAirship(loadedAirship);
                 }
             }
-        } catch (IOException e) {
-
-            // Log the load error so it can be investigated
-            getLogger().severe("Failed to load airship 'pigship3' : " + e.getMessage());
-        }
+        });
 
         // Write to the log so we know we have started up
         getLogger().info(String.format("PigletAirship v%s Loaded", PLUGIN_VERSION));
@@ -93,18 +133,49 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
 
+        // Let any background saves finish first, so they don't overwrite the saves below
+        saver.shutdown();
+
         for (String airshipName : airships.keySet()) {
+
+            // Bring the world up to date with any ghosted airships and finish writing any moves that are still waiting,
+            // so the world matches the saved airship. Airships travelling virtually are saved as virtual rather than
+            // written back into the world without checking what is in the way.
+            airships.get(airshipName).settleGhost();
+            airships.get(airshipName).writeBlocks(Integer.MAX_VALUE);
+
+            // Only the airships that have changed since they were last saved need writing
+            if (!airships.get(airshipName).isDirty()) {
+                continue;
+            }
+
             try {
-                airships.get(airshipName).saveAirship(airshipName + ".airship");
+                airships.get(airshipName).saveAirship(store);
             } catch (IOException e) {
                 getLogger().severe("Failed to save airship " + airshipName + ": " + e.getMessage());
             }
         }
 
+        try {
+            store.close();
+        } catch (IOException e) {
+            getLogger().severe("Failed to close the airship store: " + e.getMessage());
+        }
+
+        // Stop the threads used to transform large airships
+        TransformKernel.shutdown();
+
         // Save the airships to disk
         getLogger().info(String.format("PigletAirship v%s Shutdown", PLUGIN_VERSION));
     }
 
+    /**
+     * @return The mover that moves every airship on the server
+     */
+    public AirshipMover getMover() {
+        return mover;
+    }
+
     /**
      * Gets the list of airships from the server, this is called by the Android plugin using reflection
      *
@@ -168,6 +239,9 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         case "r":
                             args[0] = "right";
                             break;
+                        case "a":
+                            args[0] = "around";
+                            break;
                         case "c":
                             args[0] = "create";
                             break;
@@ -212,6 +286,7 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                             case "down":
                             case "left":
                             case "right":
+                            case "around":
                             case "help":
                             case "activate":
                             case "teleport":
@@ -235,10 +310,12 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                             player.sendMessage(ChatColor.GREEN + "activate <name> " + ChatColor.WHITE + "- Sets the given airship as your active airship");
                             player.sendMessage(ChatColor.GREEN + "left " + ChatColor.WHITE + "- Turn your active airship left");
                             player.sendMessage(ChatColor.GREEN + "right " + ChatColor.WHITE + "- Turn your active airship right");
+                            player.sendMessage(ChatColor.GREEN + "around " + ChatColor.WHITE + "- Turn your active airship around");
                             player.sendMessage(ChatColor.GREEN + "up " + ChatColor.WHITE + "- Move your active airship up");
                             player.sendMessage(ChatColor.GREEN + "down " + ChatColor.WHITE + "- Move your active airship down");
                             player.sendMessage(ChatColor.GREEN + "forward " + ChatColor.WHITE + "- Move your active airship forward");
                             player.sendMessage(ChatColor.GREEN + "reverse " + ChatColor.WHITE + "- Move your active airship backwards");
+                            player.sendMessage(ChatColor.GREEN + "speed <blocks> " + ChatColor.WHITE + "- Sets how many blocks your active airship moves at a time");
                             player.sendMessage(ChatColor.RED + "Type /airship manual for detailed instructions");
                             return true;
                         }
@@ -277,27 +354,26 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                             World world = player.getWorld();
 
                             // Get the block at the player position
-                            Block testBlock = world.getBlockAt(player.getLocation());
-
-                            for (String airshipKey : airships.keySet()) {
+                            Location location = player.getLocation();
 
-                                Airship airship = airships.get(airshipKey);
-
-                                if (airship.containsBlock(testBlock)) {
-                                    if (player.getName().equals(airship.owner)) {
-                                        // Use redis to store persistent metadata
-                                        this.setMetadata(player.getName(), "activeAirship", airshipKey);
+                            // Look up the airship at the player position, or the block the player is stood on
+                            Airship airship = index.getAirship(world, location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                            if (airship == null) {
+                                airship = index.getAirship(world, location.getBlockX(), location.getBlockY() - 1, location.getBlockZ());
+                            }
 
-                                        // Inform the user that their selected airship is active
-                                        player.sendMessage(airshipKey + " activated!");
+                            if (airship != null) {
+                                if (player.getName().equals(airship.owner)) {
+                                    // Use redis to store persistent metadata
+                                    this.setMetadata(player.getName(), "activeAirship", airship.name);
 
-                                    } else {
-                                        player.sendMessage("You do not own " + airshipKey + "!");
-                                    }
-                                    return true;
+                                    // Inform the user that their selected airship is active
+                                    player.sendMessage(airship.name + " activated!");
 
+                                } else {
+                                    player.sendMessage("You do not own " + airship.name + "!");
                                 }
-
+                                return true;
                             }
 
                             player.sendMessage("No airship detected!");
@@ -331,8 +407,9 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         // This handles the '/airship stop' command
                         if (action.equals("stop")) {
 
-                            // Stop the target airship
+                            // Stop the target airship, it will be level when it starts again
                             targetShip.stopAirship();
+                            targetShip.climb = 0;
                             return true;
                         }
 
@@ -340,7 +417,7 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         if (action.equals("left")) {
 
                             // Turn the target airship left
-                            targetShip.rotateAirship(TurnDirection.LEFT);
+                            targetShip.rotateAirship(TurnDirection.LEFT, this);
                             return true;
                         }
 
@@ -348,13 +425,27 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         if (action.equals("right")) {
 
                             // Turn the airship right
-                            targetShip.rotateAirship(TurnDirection.RIGHT);
+                            targetShip.rotateAirship(TurnDirection.RIGHT, this);
+                            return true;
+                        }
+
+                        // This handles the '/airship around' command
+                        if (action.equals("around")) {
+
+                            // Turn the airship around in a single rotation
+                            targetShip.rotateAirship(TurnDirection.AROUND, this);
                             return true;
                         }
 
                         // This handles the '/airship up' and '/airship down' command
                         if (action.equals("up") || action.equals("down")) {
 
+                            // An airship travelling forward or in reverse climbs or descends as it goes
+                            if (targetShip.isMoving && targetShip.currentDirection != BlockFace.UP && targetShip.currentDirection != BlockFace.DOWN) {
+                                targetShip.climb = action.equals("up") ? 1 : -1;
+                                return true;
+                            }
+
                             // If the airship is not currently moving up or down we must store the current direction for later
                             if (targetShip.currentDirection != BlockFace.UP && targetShip.currentDirection != BlockFace.DOWN) {
                                 targetShip.lastDirection = targetShip.currentDirection;
@@ -374,8 +465,9 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         // This handles the '/airship forward' and '/airship reverse' commands
                         if (action.equals("forward") || action.equals("reverse")) {
 
-                            // Set the reversing flag as necessary
+                            // Set the reversing flag as necessary, and level the airship off
                             targetShip.isReversing = action.equals("reverse");
+                            targetShip.climb = 0;
 
                             // If the current direction is up or down then set back to the direction before these
                             if (targetShip.currentDirection == BlockFace.UP || targetShip.currentDirection == BlockFace.DOWN) {
@@ -394,6 +486,7 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                         switch (action) {
                             case "create":
                             case "delete":
+                            case "speed":
                                 break;
                             default:
                                 player.sendMessage("Type /airship help for a list of commands.");
@@ -401,6 +494,34 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
 
                         }
 
+                        // This handles the '/airship speed' command, it changes the active airship
+                        if (action.equals("speed")) {
+
+                            // Get the active airship for the player
+                            airshipName = this.getMetadata(player.getName(), "activeAirship");
+                            if (airshipName == null || !airships.containsKey(airshipName)) {
+                                player.sendMessage("You don't have an active airship!");
+                                return true;
+                            }
+
+                            // Check the speed is a number the server allows
+                            int maxSpeed = getConfig().getInt("max-speed", 8);
+                            int speed;
+                            try {
+                                speed = Integer.parseInt(args[1]);
+                            } catch (NumberFormatException e) {
+                                speed = 0;
+                            }
+                            if (speed < 1 || speed > maxSpeed) {
+                                player.sendMessage(String.format("The speed must be between 1 and %d", maxSpeed));
+                                return true;
+                            }
+
+                            airships.get(airshipName).speed = speed;
+                            player.sendMessage(String.format("Airship '%s' now moves %d blocks at a time", airshipName, speed));
+                            return true;
+                        }
+
                         // Store the airship name from the input
                         airshipName = args[1];
 
@@ -441,42 +562,61 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                             World world = player.getWorld();
 
 
-                            // Get the block at the player position
-                            Block testBlock = world.getBlockAt(initialLocation);
+                            // Check if the block at the player position is already part of an airship
+                            if (index.getAirship(world, initialLocation.getBlockX(), initialLocation.getBlockY(), initialLocation.getBlockZ()) != null) {
+                                player.sendMessage("An airship already exists at this location.");
+                                return true;
+                            }
 
 
-                            for (String airshipKey : airships.keySet()) {
+                            // Check if this airship is already being scanned
+                            if (!pendingScans.add(airshipName)) {
+                                sender.sendMessage("An airship with this name is already being created");
+                                return true;
+                            }
 
-                                if (airships.get(airshipKey).containsBlock(testBlock)) {
-                                    player.sendMessage("An airship already exists at this location.");
-                                    return true;
+                            // Let the player know the scan has started, it can take a moment for a large airship
+                            player.sendMessage(String.format("Scanning airship '%s'...", airshipName));
 
-                                }
+                            final Player creator = player;
+                            final String newAirshipName = airshipName;
 
-                            }
+                            // Scan the new airship away from the server thread for the world, player and initial block
+                            Airship.scanAirshipAsync(this, world, world.getBlockAt(initialLocation), player.getName(), new AirshipScanCallback() {
+                                @Override
+                                public void scanComplete(Airship newAirship) {
 
+                                    // Only the block the player was standing on was checked before the scan, another
+                                    // airship may touch the rest of the hull (or have flown into it since)
+                                    Airship overlapping = newAirship.getOverlappingAirship(index);
+                                    if (overlapping != null) {
+                                        scanFailed(String.format("The airship is touching airship '%s'", overlapping.name));
+                                        return;
+                                    }
 
-                            try {
-                                // Create a new Airship object for the world, player and specified initial block
-                                Airship newAirship = new Airship(world, world.getBlockAt(initialLocation), player.getName());
+                                    pendingScans.remove(newAirshipName);
 
-                                // Set this plugin as the owner of the new airship
-                                newAirship.owningPlugin = this;
+                                    // Add the airship to the collection
+                                    newAirship.name = newAirshipName;
+                                    airships.put(newAirshipName, newAirship);
+                                    newAirship.addToIndex(index);
 
-                                // Add the airship to the collection
-                                airships.put(airshipName, newAirship);
+                                    // Inform the player that this airship has been created successfully
+                                    creator.sendMessage(String.format("Airship '%s' created!", newAirshipName));
 
-                                // Inform the player that this airship has been created successfully
-                                player.sendMessage(String.format("Airship '%s' created!", airshipName));
+                                    // Set the new airship as the player's active airship
+                                    setMetadata(creator.getName(), "activeAirship", newAirshipName);
+                                }
 
-                                // Set the new airship as the player's active airship
-                                this.setMetadata(player.getName(), "activeAirship", airshipName);
+                                @Override
+                                public void scanFailed(String reason) {
 
-                            } catch (IllegalAirshipException e) {
+                                    pendingScans.remove(newAirshipName);
 
-                                // The scan of the airship failed, we need to inform the player
-                                player.sendMessage("Airship creation failed: " + e.getMessage());
-                            }
+                                    // The scan of the airship failed, we need to inform the player
+                                    creator.sendMessage("Airship creation failed: " + reason);
+                                }
+                            });
                         }
 
 
@@ -487,11 +627,13 @@ public class AirshipPlugin extends JavaPlugin implements Listener {
                             Airship targetShip = airships.get(airshipName);
                             if (player.getName().equals(targetShip.owner)) {
 
-                                // Stop the airship
-                                targetShip.stopAirship();
+                                // Stop the airship and throw away anything it still had to write to the world
+                                mover.removeAirship(targetShip);
 
                                 // Remove the airship from the collection
                                 airships.remove(airshipName);
+                                targetShip.removeFromIndex();
+                                saver.delete(airshipName);
                                 player.sendMessage(String.format("Airship '%s' deleted!", airshipName));
                                 return true;
                             } else {
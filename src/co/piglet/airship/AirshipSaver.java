@@ -0,0 +1,122 @@
+package co.piglet.airship;
+
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves airships in the background. This is run on the server thread every autosave interval, it takes a copy of each
+ * airship that has changed since it was last saved (which is all the server thread pays for) and a worker thread
+ * writes the copies to the AirshipStore. Deleting an airship from the store goes through the same thread, so a save
+ * that is still waiting can't bring a deleted airship back.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipSaver implements Runnable {
+
+    // The plugin the airships belong to
+    private final AirshipPlugin plugin;
+
+    // The airships to save, by name
+    private final Map<String, Airship> airships;
+
+    // The store the airships are saved in
+    private final AirshipStore store;
+
+    // Writes the files, a single thread so that saves of the same airship never overlap and finish in order
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    /**
+     * Creates the saver
+     *
+     * @param plugin   The plugin the airships belong to
+     * @param airships The airships to save, by name
+     * @param store    The store the airships are saved in
+     */
+    public AirshipSaver(AirshipPlugin plugin, Map<String, Airship> airships, AirshipStore store) {
+        this.plugin = plugin;
+        this.airships = airships;
+        this.store = store;
+    }
+
+    /**
+     * run() function called by the Bukkit scheduler every autosave interval, saves the airships that have changed
+     */
+    @Override
+    public void run() {
+        for (Map.Entry<String, Airship> entry : airships.entrySet()) {
+            if (entry.getValue().isDirty()) {
+                save(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Saves an airship in the background, this must be called on the server thread
+     *
+     * @param name    The name of the airship
+     * @param airship The airship to save
+     */
+    public void save(final String name, final Airship airship) {
+
+        // Copy the airship now, the worker can then take its time without the airship changing under it
+        final AirshipFile snapshot = airship.snapshot();
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.write(name, snapshot);
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to save airship " + name + ": " + e.getMessage());
+
+                    // Try again at the next autosave
+                    if (plugin.isEnabled()) {
+                        Bukkit.getScheduler().runTask(plugin, new Runnable() {
+                            @Override
+                            public void run() {
+                                airship.markDirty();
+                            }
+                        });
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes an airship from the store in the background, after any save of it that is still waiting
+     *
+     * @param name The name of the airship
+     */
+    public void delete(final String name) {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.delete(name);
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to delete airship " + name + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the saves that have already been started to finish, and stops the worker thread
+     */
+    public void shutdown() {
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(1, TimeUnit.MINUTES)) {
+                plugin.getLogger().severe("Timed out waiting for airships to save");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package co.piglet.airship;
+
+/**
+ * Called on the server thread when an asynchronous airship scan has finished
+ *
+ * @author Geoff Wilson
+ */
+public interface AirshipScanCallback {
+
+    /**
+     * Called when the airship has been scanned successfully
+     *
+     * @param airship The new airship
+     */
+    void scanComplete(Airship airship);
+
+    /**
+     * Called when the airship could not be created
+     *
+     * @param reason The reason the scan failed, this is shown to the player
+     */
+    void scanFailed(String reason);
+}
@@ -0,0 +1,143 @@
+package co.piglet.airship;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+
+/**
+ * Scans the blocks that make up an airship. This is a breadth first flood fill using an explicit queue, so the stack
+ * depth doesn't grow with the size of the airship, and a set of packed coordinates so that each block is only
+ * checked once. Blocks are read through a BlockSource, so the scan can run against chunk snapshots away from the
+ * server thread.
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipScanner {
+
+    // Where we are reading the blocks of the airship from
+    private BlockSource source;
+
+    // The maximum number of blocks the airship can contain
+    private int limit;
+
+    // Every block we have checked so far (solid or air), so no block is read from the source twice
+    private LongHashSet visited;
+
+    // Queue of packed keys for the solid blocks whose neighbours still need to be scanned
+    private long[] queue;
+
+    // The read and write positions in the queue
+    private int head;
+    private int tail;
+
+    /**
+     * Creates a scanner for the specified block source
+     *
+     * @param source The source to read the blocks of the airship from
+     * @param limit  The maximum number of blocks the airship can contain
+     */
+    public AirshipScanner(BlockSource source, int limit) {
+        this.source = source;
+        this.limit = limit;
+    }
+
+    /**
+     * Scans all of the blocks connected to the initial block. Solid blocks are connected through any of their 26
+     * neighbours, air is never part of the airship.
+     *
+     * @param initialX The X location of the block to begin scanning from
+     * @param initialY The Y location of the block to begin scanning from
+     * @param initialZ The Z location of the block to begin scanning from
+     * @return The blocks in the airship as offsets from the initial block, the initial block (if it isn't air) is
+     * always first
+     * @throws IllegalAirshipException Thrown if the number of blocks in the airship exceeds the limit, or if there are
+     *                                 no blocks at all (the initial block and everything around it is air)
+     */
+    @SuppressWarnings("deprecation")
+    public AirshipBlockStore scan(int initialX, int initialY, int initialZ) throws IllegalAirshipException {
+
+        AirshipBlockStore blocks = new AirshipBlockStore(1024);
+        visited = new LongHashSet(1024);
+        queue = new long[1024];
+        head = 0;
+        tail = 0;
+
+        int maxHeight = source.getMaxHeight();
+
+        // Add the initial block and use it as the start of the scan
+        long initialKey = BlockKey.pack(initialX, initialY, initialZ);
+        visited.add(initialKey);
+        enqueue(initialKey);
+        int initialType = source.getTypeId(initialX, initialY, initialZ);
+        if (initialType != Material.AIR.getId()) {
+            blocks.add(0, 0, 0, initialType, source.getData(initialX, initialY, initialZ));
+        }
+
+        while (head < tail) {
+
+            long key = queue[head++];
+            int blockX = BlockKey.x(key);
+            int blockY = BlockKey.y(key);
+            int blockZ = BlockKey.z(key);
+
+            // Go through each of the 26 neighbours of this block
+            for (int i = -1; i < 2; i++) { // X
+                for (int j = -1; j < 2; j++) { // Y
+
+                    int y = blockY + j;
+
+                    // Nothing can be built outside the height of the world
+                    if (y < 0 || y >= maxHeight) {
+                        continue;
+                    }
+
+                    for (int k = -1; k < 2; k++) { // Z
+                        if (i == 0 && j == 0 && k == 0) // We do not want the initial block repeating
+                            continue;
+
+                        int x = blockX + i;
+                        int z = blockZ + k;
+                        long neighbourKey = BlockKey.pack(x, y, z);
+
+                        // If we have already checked this block we can ignore it
+                        if (!visited.add(neighbourKey)) {
+                            continue;
+                        }
+
+                        int type = source.getTypeId(x, y, z);
+
+                        // Solid blocks are added to the airship and their neighbours scanned in turn
+                        if (type != Material.AIR.getId()) {
+                            enqueue(neighbourKey);
+                            blocks.add(x - initialX, y - initialY, z - initialZ, type, source.getData(x, y, z));
+
+                            // If the airship is already at the limit then throw an exception to prevent it being created
+                            if (blocks.size() > limit) {
+                                throw new IllegalAirshipException("Too many blocks son!");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // An airship needs at least one block, there is nothing to move and no bounding box without one
+        if (blocks.size() == 0) {
+            throw new IllegalAirshipException("There are no blocks to make an airship from");
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Adds a key to the end of the queue, growing the queue if it is full
+     *
+     * @param key The key to add
+     */
+    private void enqueue(long key) {
+        if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, queue.length * 2);
+        }
+        queue[tail++] = key;
+    }
+}
@@ -0,0 +1,58 @@
+package co.piglet.airship;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Somewhere airships are saved. The store is chosen in the config, either a file for each airship in the airships
+ * folder (FolderAirshipStore) or the whole fleet in a single memory mapped file (MappedAirshipStore). Writes and
+ * deletes are made by the AirshipSaver on its worker thread, everything else is called on the server thread.
+ *
+ * @author Geoff Wilson
+ */
+public interface AirshipStore {
+
+    /**
+     * Loads every airship in the store at startup, only the header of each one is read (see Airship.load). Each
+     * airship is handed to the callback on the calling thread as soon as it has been read. An airship that can't be
+     * read is logged and skipped, it doesn't stop the others loading, and one that is corrupt is put aside so it isn't
+     * tried again.
+     *
+     * @param logger   The logger to report airships that couldn't be read to
+     * @param callback Called with each airship as it is loaded, with its name set
+     */
+    void loadAll(Logger logger, AirshipLoadCallback callback);
+
+    /**
+     * Reads an airship, including its blocks
+     *
+     * @param name The name of the airship
+     * @return The airship as it was saved
+     * @throws IOException Thrown if the airship isn't in the store or can't be read
+     */
+    AirshipFile read(String name) throws IOException;
+
+    /**
+     * Saves an airship, replacing the last save. A crash while saving leaves either the old airship or the new one.
+     *
+     * @param name     The name of the airship
+     * @param contents The airship to save (the blocks must be set)
+     * @throws IOException Thrown if the airship can't be written
+     */
+    void write(String name, AirshipFile contents) throws IOException;
+
+    /**
+     * Removes an airship from the store, nothing happens if it isn't there
+     *
+     * @param name The name of the airship
+     * @throws IOException Thrown if the airship can't be removed
+     */
+    void delete(String name) throws IOException;
+
+    /**
+     * Closes the store once everything has been saved
+     *
+     * @throws IOException Thrown if the store can't be closed cleanly
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,82 @@
+package co.piglet.airship;
+
+/**
+ * Packs a block coordinate into a single long so it can be used as a key in the primitive collections without
+ * creating a Location or Block object. X and Z take 26 bits each (enough for the world border) and Y takes 12 bits.
+ *
+ * @author Geoff Wilson
+ */
+public final class BlockKey {
+
+    // Bit layout of the packed key
+    private static final int Z_SHIFT = 12;
+    private static final int X_SHIFT = 38;
+    private static final long XZ_MASK = 0x3FFFFFFL;
+    private static final long Y_MASK = 0xFFFL;
+
+    private BlockKey() {
+    }
+
+    /**
+     * Packs the coordinate into a long key
+     *
+     * @param x The X value of the coordinate
+     * @param y The Y value of the coordinate
+     * @param z The Z value of the coordinate
+     * @return The packed key for the coordinate
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & XZ_MASK) << X_SHIFT) | ((z & XZ_MASK) << Z_SHIFT) | (y & Y_MASK);
+    }
+
+    /**
+     * @param key A packed key
+     * @return The X value of the packed key
+     */
+    public static int x(long key) {
+        return (int) (key >> X_SHIFT);
+    }
+
+    /**
+     * @param key A packed key
+     * @return The Y value of the packed key
+     */
+    public static int y(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    /**
+     * @param key A packed key
+     * @return The Z value of the packed key
+     */
+    public static int z(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    /**
+     * Packs a chunk coordinate into a long key
+     *
+     * @param chunkX The X value of the chunk (block X >> 4)
+     * @param chunkZ The Z value of the chunk (block Z >> 4)
+     * @return The packed key for the chunk
+     */
+    public static long chunk(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param chunkKey A packed chunk key
+     * @return The X value of the chunk
+     */
+    public static int chunkX(long chunkKey) {
+        return (int) (chunkKey >> 32);
+    }
+
+    /**
+     * @param chunkKey A packed chunk key
+     * @return The Z value of the chunk
+     */
+    public static int chunkZ(long chunkKey) {
+        return (int) chunkKey;
+    }
+}
@@ -0,0 +1,18 @@
+package co.piglet.airship;
+
+/**
+ * Work done on a range of the blocks in an airship, see TransformKernel
+ *
+ * @author Geoff Wilson
+ */
+public interface BlockRangeTask {
+
+    /**
+     * Does the work for a range of blocks, this may be called on any thread and at the same time as other ranges, so
+     * it must only write to the part of its output that belongs to its own range
+     *
+     * @param from The index of the first block in the range
+     * @param to   The index after the last block in the range
+     */
+    void run(int from, int to);
+}
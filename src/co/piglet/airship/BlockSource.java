@@ -0,0 +1,34 @@
+package co.piglet.airship;
+
+/**
+ * Somewhere the airship scanner can read blocks from, either the live world or a set of chunk snapshots
+ *
+ * @author Geoff Wilson
+ */
+public interface BlockSource {
+
+    /**
+     * @return The height of the world, blocks can only exist below this
+     */
+    int getMaxHeight();
+
+    /**
+     * Gets the type id of the block at the specified location
+     *
+     * @param x The X location of the block
+     * @param y The Y location of the block
+     * @param z The Z location of the block
+     * @return The type id of the block
+     */
+    int getTypeId(int x, int y, int z);
+
+    /**
+     * Gets the data value of the block at the specified location
+     *
+     * @param x The X location of the block
+     * @param y The Y location of the block
+     * @param z The Z location of the block
+     * @return The data value of the block (color etc..)
+     */
+    int getData(int x, int y, int z);
+}
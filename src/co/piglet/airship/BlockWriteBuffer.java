@@ -0,0 +1,291 @@
+package co.piglet.airship;
+
+import java.util.Arrays;
+
+/**
+ * A queue of block changes waiting to be written to the world, kept as parallel primitive arrays. Airships add the
+ * changes for a move here and the AirshipMover writes them out a few at a time, so a big move can be spread over
+ * several ticks. The changes for each move are sorted by chunk and section so they can be written a chunk at a time.
+ *
+ * @author Geoff Wilson
+ */
+public class BlockWriteBuffer {
+
+    // The location of each change
+    private int[] x;
+    private int[] y;
+    private int[] z;
+
+    // The type id and data value to write at each location
+    private short[] type;
+    private byte[] data;
+
+    // The number of changes in the buffer
+    private int size;
+
+    // The index of the next change to write
+    private int position;
+
+    // Scratch space for sorting, kept between sorts so that sorting doesn't allocate once the buffer has warmed up
+    private long[] sortKeys = new long[0];
+    private int[] scratchInt = new int[0];
+    private short[] scratchShort = new short[0];
+    private byte[] scratchByte = new byte[0];
+
+    /**
+     * Creates an empty buffer
+     *
+     * @param capacity The number of changes we expect to store
+     */
+    public BlockWriteBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        x = new int[capacity];
+        y = new int[capacity];
+        z = new int[capacity];
+        type = new short[capacity];
+        data = new byte[capacity];
+    }
+
+    /**
+     * Adds a change to the end of the buffer
+     *
+     * @param x    The X location of the block to change
+     * @param y    The Y location of the block to change
+     * @param z    The Z location of the block to change
+     * @param type The type id to write
+     * @param data The data value to write (color etc..)
+     */
+    public void add(int x, int y, int z, int type, int data) {
+
+        // Grow the arrays if they are full
+        if (size == this.x.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.type = Arrays.copyOf(this.type, capacity);
+            this.data = Arrays.copyOf(this.data, capacity);
+        }
+
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        this.type[size] = (short) type;
+        this.data[size] = (byte) data;
+        size++;
+    }
+
+    /**
+     * Adds every change in another buffer (including any already written) to the end of this buffer
+     *
+     * @param other The buffer to copy the changes from
+     */
+    public void addAll(BlockWriteBuffer other) {
+
+        // Grow the arrays to fit the other buffer
+        int required = size + other.size;
+        if (required > x.length) {
+            int capacity = Math.max(required, x.length * 2);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+            type = Arrays.copyOf(type, capacity);
+            data = Arrays.copyOf(data, capacity);
+        }
+
+        System.arraycopy(other.x, 0, x, size, other.size);
+        System.arraycopy(other.y, 0, y, size, other.size);
+        System.arraycopy(other.z, 0, z, size, other.size);
+        System.arraycopy(other.type, 0, type, size, other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size = required;
+    }
+
+    /**
+     * Throws away every change in the buffer, the arrays are kept so the buffer can be reused
+     */
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    /**
+     * @return True if every change in the buffer has been written
+     */
+    public boolean isEmpty() {
+        return position == size;
+    }
+
+    /**
+     * @return The number of changes still waiting to be written
+     */
+    public int remaining() {
+        return size - position;
+    }
+
+    public int getX(int index) {
+        return x[index];
+    }
+
+    public int getY(int index) {
+        return y[index];
+    }
+
+    public int getZ(int index) {
+        return z[index];
+    }
+
+    public int getType(int index) {
+        return type[index];
+    }
+
+    public byte getData(int index) {
+        return data[index];
+    }
+
+    /**
+     * @return The number of changes that have been added to the buffer (including any already written)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sorts a range of changes by chunk and then by 16 block section within the chunk, so that changes in the same
+     * chunk are written together. Changes to the same location must not appear twice in the range, as their order
+     * is not kept.
+     *
+     * @param from The index of the first change to sort
+     * @param to   The index after the last change to sort
+     */
+    public void sortByChunk(int from, int to) {
+
+        int count = to - from;
+        if (count < 2) {
+            return;
+        }
+
+        if (sortKeys.length < count) {
+            int capacity = Math.max(count, sortKeys.length * 2);
+            sortKeys = new long[capacity];
+            scratchInt = new int[capacity];
+            scratchShort = new short[capacity];
+            scratchByte = new byte[capacity];
+        }
+
+        // Chunks are stored relative to the first change, an airship can't span more than 4096 chunks
+        int baseChunkX = (x[from] >> 4) - 2048;
+        int baseChunkZ = (z[from] >> 4) - 2048;
+
+        // Build a key for each change: chunk X (12 bits), chunk Z (12 bits), section (4 bits) then the index
+        for (int i = 0; i < count; i++) {
+            int index = from + i;
+            long chunkX = ((x[index] >> 4) - baseChunkX) & 0xFFF;
+            long chunkZ = ((z[index] >> 4) - baseChunkZ) & 0xFFF;
+            long section = (y[index] >> 4) & 0xF;
+            sortKeys[i] = (chunkX << 48) | (chunkZ << 36) | (section << 32) | i;
+        }
+        sort(sortKeys, 0, count - 1);
+
+        // Reorder the changes to match the sorted keys
+        reorder(x, from, count);
+        reorder(y, from, count);
+        reorder(z, from, count);
+
+        System.arraycopy(type, from, scratchShort, 0, count);
+        System.arraycopy(data, from, scratchByte, 0, count);
+        for (int i = 0; i < count; i++) {
+            int source = (int) sortKeys[i];
+            type[from + i] = scratchShort[source];
+            data[from + i] = scratchByte[source];
+        }
+    }
+
+    /**
+     * Sorts a range of keys in place. Arrays.sort can allocate a work array when the keys are already partly in order
+     * (which the changes for a move usually are), so we use a plain quicksort that never allocates.
+     *
+     * @param keys The keys to sort
+     * @param low  The index of the first key in the range
+     * @param high The index of the last key in the range
+     */
+    private static void sort(long[] keys, int low, int high) {
+
+        while (high - low > 16) {
+
+            // Partition around the middle key
+            long pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long swap = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+
+            // Recurse into the smaller half and loop on the larger one, so the stack depth stays small
+            if (j - low < high - i) {
+                sort(keys, low, j);
+                low = i;
+            } else {
+                sort(keys, i, high);
+                high = j;
+            }
+        }
+
+        // Insertion sort for the small ranges that are left
+        for (int i = low + 1; i <= high; i++) {
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= low && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            keys[j + 1] = key;
+        }
+    }
+
+    /**
+     * Reorders a range of one of the location arrays to match the sorted keys
+     *
+     * @param values The array to reorder
+     * @param from   The index of the first change in the range
+     * @param count  The number of changes in the range
+     */
+    private void reorder(int[] values, int from, int count) {
+        System.arraycopy(values, from, scratchInt, 0, count);
+        for (int i = 0; i < count; i++) {
+            values[from + i] = scratchInt[(int) sortKeys[i]];
+        }
+    }
+
+    /**
+     * @return The index of the next change to write
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Marks changes as written, once everything has been written the buffer is reset so its arrays can be reused
+     *
+     * @param count The number of changes that have been written
+     */
+    public void advance(int count) {
+        position += count;
+        if (position >= size) {
+            position = 0;
+            size = 0;
+        }
+    }
+}
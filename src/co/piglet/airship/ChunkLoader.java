@@ -0,0 +1,150 @@
+package co.piglet.airship;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Loads the chunks that moving airships are about to fly into ahead of time, and keeps them loaded while an airship
+ * needs them. Bukkit can only load chunks on the server thread, so rather than letting a move load chunks in the
+ * middle of a tick, requests are queued and only a few chunks are loaded each tick.
+ *
+ * @author Geoff Wilson
+ */
+public class ChunkLoader implements Listener {
+
+    /**
+     * A chunk waiting to be loaded
+     */
+    private static class Request {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+
+        private Request(World world, int chunkX, int chunkZ) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+    }
+
+    // The number of airships holding each chunk, one map per world keyed by the packed chunk (see BlockKey.chunk)
+    private final HashMap<UUID, HashMap<Long, Integer>> held = new HashMap<>();
+
+    // The chunks waiting to be loaded, in the order they were asked for
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+
+    // The maximum number of chunks to load each tick
+    private final int loadsPerTick;
+
+    /**
+     * Creates the chunk loader
+     *
+     * @param loadsPerTick The maximum number of chunks to load each tick
+     */
+    public ChunkLoader(int loadsPerTick) {
+        this.loadsPerTick = Math.max(loadsPerTick, 1);
+    }
+
+    /**
+     * Holds a chunk for an airship, the chunk is queued to be loaded if it isn't already and won't be unloaded until
+     * every airship holding it has released it
+     *
+     * @param world  The world the chunk is in
+     * @param chunkX The X value of the chunk
+     * @param chunkZ The Z value of the chunk
+     */
+    public void hold(World world, int chunkX, int chunkZ) {
+
+        HashMap<Long, Integer> chunks = held.get(world.getUID());
+        if (chunks == null) {
+            chunks = new HashMap<>();
+            held.put(world.getUID(), chunks);
+        }
+
+        long key = BlockKey.chunk(chunkX, chunkZ);
+        Integer count = chunks.get(key);
+        chunks.put(key, count == null ? 1 : count + 1);
+
+        if (count == null && !world.isChunkLoaded(chunkX, chunkZ)) {
+            queue.add(new Request(world, chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Releases a chunk held by an airship, the server is free to unload it once no airship is holding it
+     *
+     * @param world  The world the chunk is in
+     * @param chunkX The X value of the chunk
+     * @param chunkZ The Z value of the chunk
+     */
+    public void release(World world, int chunkX, int chunkZ) {
+
+        HashMap<Long, Integer> chunks = held.get(world.getUID());
+        if (chunks == null) {
+            return;
+        }
+
+        long key = BlockKey.chunk(chunkX, chunkZ);
+        Integer count = chunks.get(key);
+        if (count == null) {
+            return;
+        }
+
+        if (count == 1) {
+            chunks.remove(key);
+        } else {
+            chunks.put(key, count - 1);
+        }
+    }
+
+    /**
+     * Loads the next few chunks in the queue, this is called by the AirshipMover every tick
+     */
+    public void tick() {
+
+        int loaded = 0;
+        while (loaded < loadsPerTick && !queue.isEmpty()) {
+
+            Request request = queue.poll();
+
+            // Skip chunks that nobody needs anymore, or that have been loaded by something else in the meantime
+            if (!isHeld(request.world, request.chunkX, request.chunkZ) || request.world.isChunkLoaded(request.chunkX, request.chunkZ)) {
+                continue;
+            }
+
+            request.world.loadChunk(request.chunkX, request.chunkZ, true);
+            loaded++;
+        }
+    }
+
+    /**
+     * Stops the server unloading chunks that an airship is holding
+     *
+     * @param event The chunk unload event
+     */
+    @EventHandler(ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        if (isHeld(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * @param world  The world the chunk is in
+     * @param chunkX The X value of the chunk
+     * @param chunkZ The Z value of the chunk
+     * @return True if an airship is holding the chunk
+     */
+    private boolean isHeld(World world, int chunkX, int chunkZ) {
+        HashMap<Long, Integer> chunks = held.get(world.getUID());
+        return chunks != null && chunks.containsKey(BlockKey.chunk(chunkX, chunkZ));
+    }
+}
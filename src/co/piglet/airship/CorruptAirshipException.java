@@ -0,0 +1,23 @@
+package co.piglet.airship;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a saved airship was read but can't be decoded, as opposed to an airship that couldn't be read at all.
+ * Only airships that are corrupt are put aside so they aren't tried again, anything else (a file that is locked or
+ * can't be opened) may work the next time.
+ *
+ * @author Geoff Wilson
+ */
+public class CorruptAirshipException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CorruptAirshipException(String message) {
+        super(message);
+    }
+
+    public CorruptAirshipException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
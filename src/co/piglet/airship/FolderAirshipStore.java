@@ -0,0 +1,96 @@
+package co.piglet.airship;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+
+/**
+ * Saves each airship as its own .airship file in the airships folder (see AirshipFile), this is the default store.
+ * Files are written crash safe: the airship is written to a temporary file which is synced to disk and then renamed
+ * over the old file, so a crash leaves either the old file or the new one, never half of one.
+ *
+ * @author Geoff Wilson
+ */
+public class FolderAirshipStore implements AirshipStore {
+
+    // The folder the airship files are kept in
+    private final File folder;
+
+    // Compress the blocks in the files?
+    private final boolean compress;
+
+    /**
+     * Creates the store, the folder is created if it doesn't exist
+     *
+     * @param folder   The folder the airship files are kept in
+     * @param compress True to compress the blocks in the files
+     */
+    public FolderAirshipStore(File folder, boolean compress) {
+        this.folder = folder;
+        this.compress = compress;
+        folder.mkdirs();
+    }
+
+    @Override
+    public void loadAll(Logger logger, AirshipLoadCallback callback) {
+        AirshipLoader.loadAll(folder, this, logger, callback);
+    }
+
+    @Override
+    public AirshipFile read(String name) throws IOException {
+        return AirshipFile.read(getFile(name), false);
+    }
+
+    @Override
+    public void write(String name, AirshipFile contents) throws IOException {
+        write(getFile(name), contents, compress);
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        File file = getFile(name);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Couldn't delete " + file.getName());
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @param name The name of the airship
+     * @return The file the airship is saved in
+     */
+    private File getFile(String name) {
+        return new File(folder, name + ".airship");
+    }
+
+    /**
+     * Writes an airship file crash safe, through a temporary file that is synced and then renamed over the target
+     *
+     * @param file     The file to write
+     * @param contents The airship to write
+     * @param compress True to compress the blocks
+     * @throws IOException Thrown if the airship can't be written
+     */
+    public static void write(File file, AirshipFile contents, boolean compress) throws IOException {
+
+        File temp = new File(file.getPath() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 65536);
+            AirshipFile.write(buffered, contents, compress);
+            buffered.flush();
+
+            // Make sure the new file is on the disk before it replaces the old one
+            out.getChannel().force(true);
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -2,7 +2,7 @@ package co.piglet.airship;
 
 /**
  * Thrown when the creation of an airship fails.
- * This can currently only be thrown if the number of blocks exceeds the limit
+ * This can currently only be thrown if the number of blocks exceeds the limit or there are no blocks at all
  *
  * @author Ben Carvell
  */
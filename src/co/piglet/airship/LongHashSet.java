@@ -0,0 +1,146 @@
+package co.piglet.airship;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive long values using open addressing, used to hold packed block keys (see BlockKey) without
+ * boxing each one into a Long.
+ *
+ * @author Geoff Wilson
+ */
+public class LongHashSet {
+
+    // Marks an unused slot, this is never produced by BlockKey.pack for a coordinate inside the world border
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // The table of keys (the length is always a power of two)
+    private long[] keys;
+
+    // The number of keys in the set
+    private int size;
+
+    /**
+     * Creates a new set sized for the expected number of keys
+     *
+     * @param expectedSize The number of keys we expect to store
+     */
+    public LongHashSet(int expectedSize) {
+        keys = new long[tableSize(expectedSize)];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds a key to the set
+     *
+     * @param key The key to add
+     * @return True if the key was added, false if it was already present
+     */
+    public boolean add(long key) {
+
+        // Grow the table once it is half full to keep the probe sequences short
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        // Linear probe until we find the key or an empty slot
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        size++;
+        return true;
+    }
+
+    /**
+     * Checks if the key is in the set
+     *
+     * @param key The key to look for
+     * @return True if the key is in the set
+     */
+    public boolean contains(long key) {
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The number of keys in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all of the keys from the set
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Moves all of the keys into a new table of the given size
+     *
+     * @param newLength The new table length (a power of two)
+     */
+    private void rehash(int newLength) {
+
+        long[] oldKeys = keys;
+        keys = new long[newLength];
+        Arrays.fill(keys, EMPTY);
+
+        int mask = newLength - 1;
+        for (long key : oldKeys) {
+            if (key != EMPTY) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    /**
+     * Works out the table length for the expected number of keys
+     *
+     * @param expectedSize The number of keys we expect to store
+     * @return A power of two at least twice the expected size
+     */
+    static int tableSize(int expectedSize) {
+        int length = 16;
+        while (length < expectedSize * 2) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /**
+     * Spreads the bits of a key so that neighbouring coordinates don't cluster in the table
+     *
+     * @param key The key to hash
+     * @return The hash of the key
+     */
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
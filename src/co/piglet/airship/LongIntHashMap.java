@@ -0,0 +1,121 @@
+package co.piglet.airship;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive long keys to int values using open addressing, used to look up the index of a block from
+ * its packed location (see BlockKey) without boxing.
+ *
+ * @author Geoff Wilson
+ */
+public class LongIntHashMap {
+
+    // Marks an unused slot, this is never produced by BlockKey.pack for a coordinate inside the world border
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // The value returned by get when a key isn't in the map
+    public static final int MISSING = -1;
+
+    // The table of keys and their values (the length is always a power of two)
+    private long[] keys;
+    private int[] values;
+
+    // The number of keys in the map
+    private int size;
+
+    /**
+     * Creates a new map sized for the expected number of keys
+     *
+     * @param expectedSize The number of keys we expect to store
+     */
+    public LongIntHashMap(int expectedSize) {
+        int length = LongHashSet.tableSize(expectedSize);
+        keys = new long[length];
+        values = new int[length];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Sets the value for a key, replacing any existing value
+     *
+     * @param key   The key to set
+     * @param value The value for the key
+     */
+    public void put(long key, int value) {
+
+        // Grow the table once it is half full to keep the probe sequences short
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+
+        // Linear probe until we find the key or an empty slot
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Gets the value for a key
+     *
+     * @param key The key to look up
+     * @return The value for the key, or MISSING if the key isn't in the map
+     */
+    public int get(long key) {
+
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return MISSING;
+    }
+
+    /**
+     * @return The number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves all of the keys into a new table of the given size
+     *
+     * @param newLength The new table length (a power of two)
+     */
+    private void rehash(int newLength) {
+
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[newLength];
+        values = new int[newLength];
+        Arrays.fill(keys, EMPTY);
+
+        int mask = newLength - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = LongHashSet.hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package co.piglet.airship;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive long keys to objects using open addressing, used to look up things by their packed location
+ * (see BlockKey) without boxing each key into a Long.
+ *
+ * @param <V> The type of value stored in the map
+ * @author Geoff Wilson
+ */
+public class LongObjectHashMap<V> {
+
+    // Marks an unused slot, this is never produced by BlockKey.pack for a coordinate inside the world border
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // The table of keys and their values (the length is always a power of two)
+    private long[] keys;
+    private Object[] values;
+
+    // The number of keys in the map
+    private int size;
+
+    /**
+     * Creates a new map sized for the expected number of keys
+     *
+     * @param expectedSize The number of keys we expect to store
+     */
+    public LongObjectHashMap(int expectedSize) {
+        int length = LongHashSet.tableSize(expectedSize);
+        keys = new long[length];
+        values = new Object[length];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Sets the value for a key, replacing any existing value
+     *
+     * @param key   The key to set
+     * @param value The value for the key
+     */
+    public void put(long key, V value) {
+
+        // Grow the table once it is half full to keep the probe sequences short
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+
+        // Linear probe until we find the key or an empty slot
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Gets the value for a key
+     *
+     * @param key The key to look up
+     * @return The value for the key, or null if the key isn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes a key from the map
+     *
+     * @param key The key to remove
+     * @return The value that was stored for the key, or null if the key wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key) & mask;
+
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                V value = (V) values[slot];
+                deleteSlot(slot);
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every key from the map, the table keeps its size
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Empties a slot and shifts any later keys in the same probe sequence back, so that lookups never stop early at
+     * the gap we leave behind
+     *
+     * @param slot The slot to empty
+     */
+    private void deleteSlot(int slot) {
+
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (keys[next] != EMPTY) {
+
+            // The key in this slot can move into the gap if its ideal slot is not between the gap and its current slot
+            int ideal = LongHashSet.hash(keys[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        size--;
+    }
+
+    /**
+     * Moves all of the keys into a new table of the given size
+     *
+     * @param newLength The new table length (a power of two)
+     */
+    private void rehash(int newLength) {
+
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[newLength];
+        values = new Object[newLength];
+        Arrays.fill(keys, EMPTY);
+
+        int mask = newLength - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = LongHashSet.hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
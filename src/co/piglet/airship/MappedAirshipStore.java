@@ -0,0 +1,441 @@
+package co.piglet.airship;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the whole fleet in a single memory mapped file, instead of a file for each airship. Opening the store is one
+ * file open however many airships there are, and loading or saving an airship copies a single region of the file.
+ * <p/>
+ * The file starts with a segment holding the magic number and the format version, then the records, each one a whole
+ * number of segments long. A record starts with its length, its state (free space, an airship, or an airship that
+ * couldn't be read), a sequence number and the length of its contents. The contents are the name of the airship
+ * followed by the airship in the binary AirshipFile format. There is no separate index, the names are found by
+ * stepping from record to record when the store is opened and kept in memory.
+ * <p/>
+ * Saving an airship writes a new record and syncs it before the old record is freed, so a crash can leave both (the
+ * one with the higher sequence number wins) but never half of one. Freed records are merged with the free records
+ * either side of them and reused for later saves, the file only grows when no free record is big enough.
+ * <p/>
+ * The lock is only held while the index and the free records are changed and while a record is copied out, never
+ * while the file is synced. Airships are loaded on the server thread, so they must never wait on a save's syncs. A
+ * save reserves its space under the lock, writes and syncs the record without it, and then takes the lock again to
+ * put the record in the index.
+ *
+ * @author Geoff Wilson
+ */
+public class MappedAirshipStore implements AirshipStore {
+
+    // The first four bytes of a fleet store ("PAFL")
+    public static final int MAGIC = 0x5041464C;
+
+    // The version of the format written by this class
+    public static final int VERSION = 1;
+
+    // Records are a whole number of segments long, the first segment holds the magic number and version
+    private static final int SEGMENT = 4096;
+
+    // The size the file is mapped at when it is created
+    private static final int INITIAL_SIZE = SEGMENT * 256;
+
+    // The states of a record
+    private static final int STATE_FREE = 0;
+    private static final int STATE_AIRSHIP = 1;
+    private static final int STATE_CORRUPT = 2;
+
+    // The size of the record header (length, state, sequence number and contents length)
+    private static final int RECORD_HEADER = 20;
+
+    // The file and the mapping of it
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    // Compress the blocks in the records?
+    private final boolean compress;
+
+    // The location of the record for each airship, by name
+    private final HashMap<String, Integer> records = new HashMap<>();
+
+    // The length of each free record, by location
+    private final TreeMap<Integer, Integer> free = new TreeMap<>();
+
+    // The location just past the last record
+    private int end;
+
+    // The sequence number of the newest record
+    private long sequence;
+
+    /**
+     * Opens the store, the file is created if it doesn't exist
+     *
+     * @param path     The file to keep the fleet in
+     * @param compress True to compress the blocks in the records
+     * @param logger   The logger to report damaged records to
+     * @throws IOException Thrown if the file can't be opened, or isn't a fleet store
+     */
+    public MappedAirshipStore(File path, boolean compress, Logger logger) throws IOException {
+
+        this.compress = compress;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path.getName() + " is too large to map");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+
+            if (size == 0) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.force();
+            } else if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path.getName() + " is not an airship fleet store");
+            } else if (buffer.getInt(4) > VERSION) {
+                throw new IOException("Unsupported fleet store version " + buffer.getInt(4));
+            }
+
+            scan(logger);
+
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Steps through the records, building the index of names and the list of free records
+     *
+     * @param logger The logger to report damaged records to
+     */
+    private void scan(Logger logger) {
+
+        int position = SEGMENT;
+        while (position + RECORD_HEADER <= buffer.capacity()) {
+
+            // The space past the last record is never written, so a length of zero is the end of the records
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+
+            // A record can only be damaged by a crash while the file was being extended, nothing after it was saved
+            if (length < 0 || length % SEGMENT != 0 || length > buffer.capacity() - position) {
+                logger.severe(String.format("The fleet store is damaged after %d bytes, the rest of it has been discarded", position));
+                buffer.putInt(position, 0);
+                break;
+            }
+
+            int state = buffer.getInt(position + 4);
+            if (state == STATE_FREE) {
+                release(position);
+            } else if (state == STATE_AIRSHIP) {
+                try {
+                    String name = open(position).readUTF();
+                    long recordSequence = buffer.getLong(position + 8);
+                    sequence = Math.max(sequence, recordSequence);
+
+                    // A crash while saving can leave the old record as well as the new one, the newer one is kept
+                    Integer other = records.get(name);
+                    if (other == null) {
+                        records.put(name, position);
+                    } else if (buffer.getLong(other + 8) < recordSequence) {
+                        release(other);
+                        records.put(name, position);
+                    } else {
+                        release(position);
+                    }
+                } catch (IOException e) {
+                    logger.severe(String.format("Failed to read the record at %d in the fleet store : %s", position, e.getMessage()));
+                    buffer.putInt(position + 4, STATE_CORRUPT);
+                }
+            }
+
+            position += length;
+        }
+
+        end = position;
+        buffer.force();
+    }
+
+    @Override
+    public void loadAll(Logger logger, AirshipLoadCallback callback) {
+
+        ArrayList<Airship> loaded = new ArrayList<>();
+        MappedByteBuffer mapping;
+
+        synchronized (this) {
+            loadAll(loaded, logger);
+            mapping = buffer;
+        }
+
+        mapping.force();
+
+        // Every header is read from memory in one go, so the airships are handed over once the lock is let go
+        for (Airship airship : loaded) {
+            callback.airshipLoaded(airship);
+        }
+    }
+
+    /**
+     * Reads the header of every airship, the caller must hold the lock
+     *
+     * @param loaded The list to add the airships to
+     * @param logger The logger to report airships that couldn't be read to
+     */
+    private void loadAll(List<Airship> loaded, Logger logger) {
+
+        Iterator<Map.Entry<String, Integer>> iterator = records.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Integer> record = iterator.next();
+            try {
+                DataInputStream in = open(record.getValue());
+                in.readUTF();
+                loaded.add(new Airship(record.getKey(), this, AirshipFile.read(in, record.getKey(), true)));
+            } catch (CorruptAirshipException e) {
+
+                // Keep the record so it can be investigated, but never try to load it again
+                buffer.putInt(record.getValue() + 4, STATE_CORRUPT);
+                iterator.remove();
+                logger.severe(String.format("Failed to load airship '%s' : %s, it has been marked as corrupt in the fleet store", record.getKey(), e.getMessage()));
+            } catch (IOException e) {
+                logger.severe(String.format("Failed to load airship '%s' : %s, it will be tried again next time", record.getKey(), e.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public AirshipFile read(String name) throws IOException {
+
+        // Copy the record out while we hold the lock, it is read from the copy
+        byte[] contents;
+        synchronized (this) {
+            Integer position = records.get(name);
+            if (position == null) {
+                throw new IOException("Airship '" + name + "' isn't in the fleet store");
+            }
+            ByteBuffer region = region(position);
+            contents = new byte[region.remaining()];
+            region.get(contents);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+        in.readUTF();
+        return AirshipFile.read(in, name, false);
+    }
+
+    @Override
+    public void write(String name, AirshipFile contents) throws IOException {
+
+        // Build the contents of the record first, the lock is only held while it is copied in
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(name);
+        AirshipFile.write(out, contents, compress);
+        out.flush();
+        byte[] record = bytes.toByteArray();
+
+        long length = ((long) RECORD_HEADER + record.length + SEGMENT - 1) / SEGMENT * SEGMENT;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Airship '" + name + "' is too large for the fleet store");
+        }
+
+        // Reserve the space, nothing else touches it until the record is put in the index
+        int position;
+        MappedByteBuffer mapping;
+        synchronized (this) {
+            position = allocate((int) length);
+            mapping = buffer;
+        }
+
+        // Sync any free record split off the reserved space first, so the records can always be stepped through
+        mapping.force();
+
+        // Write the record as free space, it only becomes the airship once all of it is on the disk
+        mapping.putInt(position, (int) length);
+        mapping.putInt(position + 4, STATE_FREE);
+        mapping.putLong(position + 8, nextSequence());
+        mapping.putInt(position + 16, record.length);
+        ByteBuffer region = mapping.duplicate();
+        region.position(position + RECORD_HEADER);
+        region.put(record);
+        mapping.force();
+
+        mapping.putInt(position + 4, STATE_AIRSHIP);
+        mapping.force();
+
+        // Only now can the old record go
+        synchronized (this) {
+            Integer old = records.put(name, position);
+            if (old == null) {
+                return;
+            }
+            release(old);
+            mapping = buffer;
+        }
+        mapping.force();
+    }
+
+    /**
+     * @return The sequence number for the next record
+     */
+    private synchronized long nextSequence() {
+        return ++sequence;
+    }
+
+    @Override
+    public void delete(String name) {
+
+        MappedByteBuffer mapping;
+        synchronized (this) {
+            Integer position = records.remove(name);
+            if (position == null) {
+                return;
+            }
+            release(position);
+            mapping = buffer;
+        }
+        mapping.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Finds space for a record, the first free record that is big enough is used (the rest of it stays free), or the
+     * record goes on the end of the file. The caller must hold the lock, and sync the file before writing the record.
+     *
+     * @param length The length of the record, a whole number of segments
+     * @return The location for the record
+     * @throws IOException Thrown if the file can't be made big enough
+     */
+    private int allocate(int length) throws IOException {
+
+        for (Map.Entry<Integer, Integer> space : free.entrySet()) {
+            int position = space.getKey();
+            int spaceLength = space.getValue();
+            if (spaceLength < length) {
+                continue;
+            }
+
+            free.remove(position);
+            if (spaceLength > length) {
+
+                // The rest of the space becomes a free record of its own, the caller syncs this before using the space
+                buffer.putInt(position + length, spaceLength - length);
+                buffer.putInt(position + length + 4, STATE_FREE);
+                free.put(position + length, spaceLength - length);
+            }
+            return position;
+        }
+
+        // Nothing free is big enough, add the record to the end and mark the new end
+        if ((long) end + length + SEGMENT > Integer.MAX_VALUE) {
+            throw new IOException("The fleet store is full");
+        }
+        int position = end;
+        end += length;
+        if (end + SEGMENT > buffer.capacity()) {
+
+            // Every mapping of the file shares the same pages, so a save still writing through the old mapping is fine
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Math.max(buffer.capacity() * 2L, end + SEGMENT), Integer.MAX_VALUE));
+        }
+        buffer.putInt(end, 0);
+        return position;
+    }
+
+    /**
+     * Frees a record, it is merged with the free records either side of it
+     *
+     * @param position The location of the record
+     */
+    private void release(int position) {
+
+        int length = buffer.getInt(position);
+        buffer.putInt(position + 4, STATE_FREE);
+
+        Integer next = free.remove(position + length);
+        if (next != null) {
+            length += next;
+            buffer.putInt(position, length);
+        }
+
+        Map.Entry<Integer, Integer> previous = free.lowerEntry(position);
+        if (previous != null && previous.getKey() + previous.getValue() == position) {
+            position = previous.getKey();
+            length += previous.getValue();
+            buffer.putInt(position, length);
+        }
+
+        free.put(position, length);
+    }
+
+    /**
+     * @param position The location of a record
+     * @return The contents of the record, as a buffer of their own
+     * @throws IOException Thrown if the contents length in the record is damaged
+     */
+    private ByteBuffer region(int position) throws IOException {
+
+        int contentsLength = buffer.getInt(position + 16);
+        if (contentsLength < 0 || contentsLength > buffer.getInt(position) - RECORD_HEADER) {
+            throw new CorruptAirshipException("Corrupt record at " + position);
+        }
+
+        ByteBuffer region = buffer.duplicate();
+        region.position(position + RECORD_HEADER);
+        region.limit(position + RECORD_HEADER + contentsLength);
+        return region.slice();
+    }
+
+    /**
+     * @param position The location of a record
+     * @return A stream that reads the contents of the record straight from the mapping
+     * @throws IOException Thrown if the contents length in the record is damaged
+     */
+    private DataInputStream open(int position) throws IOException {
+        return new DataInputStream(new RegionInputStream(region(position)));
+    }
+
+    /**
+     * Reads a region of the mapping as a stream
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final ByteBuffer region;
+
+        private RegionInputStream(ByteBuffer region) {
+            this.region = region;
+        }
+
+        @Override
+        public int read() {
+            return region.hasRemaining() ? region.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!region.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, region.remaining());
+            region.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return region.remaining();
+        }
+    }
+}
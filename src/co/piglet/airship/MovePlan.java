@@ -0,0 +1,109 @@
+package co.piglet.airship;
+
+/**
+ * Works out which blocks need to be written to the world when an airship moves by a fixed amount. Only cells whose
+ * contents change are written: blocks that move into a cell that held a different block (or nothing) before the move,
+ * and cells on the trailing face of the airship that become empty. The plan only depends on the shape of the airship,
+ * so it can be kept and reused for every move in the same direction until the airship is rotated or rescanned.
+ *
+ * @author Geoff Wilson
+ */
+public class MovePlan {
+
+    // The amount the airship moves by
+    public final int dx;
+    public final int dy;
+    public final int dz;
+
+    // The indices of the blocks that need to be written at their new location
+    public final int[] writes;
+
+    // The indices of the blocks whose old location becomes empty after the move
+    public final int[] clears;
+
+    // The indices of the blocks on the leading face, these move into cells that were not part of the airship
+    public final int[] leading;
+
+    // The ways a block can be part of the plan, a block can be in more than one part
+    private static final byte WRITE = 1;
+    private static final byte CLEAR = 2;
+    private static final byte LEADING = 4;
+
+    /**
+     * Works out the move plan for the specified blocks. Each block is looked at on its own, so the plan for a large
+     * airship is worked out in parallel (see TransformKernel).
+     *
+     * @param blocks The blocks in the airship
+     * @param dx     The amount the airship moves by on the X axis
+     * @param dy     The amount the airship moves by on the Y axis
+     * @param dz     The amount the airship moves by on the Z axis
+     */
+    public MovePlan(final AirshipBlockStore blocks, final int dx, final int dy, final int dz) {
+
+        this.dx = dx;
+        this.dy = dy;
+        this.dz = dz;
+
+        // The offset index is only read from here on, so every range can use it at once
+        blocks.buildIndex();
+
+        final byte[] parts = new byte[blocks.size()];
+        TransformKernel.forRange(blocks.size(), new BlockRangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+
+                    int x = blocks.getX(i);
+                    int y = blocks.getY(i);
+                    int z = blocks.getZ(i);
+                    byte part = 0;
+
+                    // Before the move, the cell this block moves into held the block at offset + delta (if there was one)
+                    int previous = blocks.indexOf(x + dx, y + dy, z + dz);
+                    if (previous == -1) {
+                        part |= LEADING;
+                    }
+                    if (previous == -1 || blocks.getType(previous) != blocks.getType(i) || blocks.getData(previous) != blocks.getData(i)) {
+                        part |= WRITE;
+                    }
+
+                    // After the move, the cell this block leaves holds the block at offset - delta (if there is one)
+                    if (blocks.indexOf(x - dx, y - dy, z - dz) == -1) {
+                        part |= CLEAR;
+                    }
+
+                    parts[i] = part;
+                }
+            }
+        });
+
+        // Gather the blocks for each part of the plan, in block order
+        this.writes = collect(parts, WRITE);
+        this.clears = collect(parts, CLEAR);
+        this.leading = collect(parts, LEADING);
+    }
+
+    /**
+     * @param parts The parts of the plan each block belongs to
+     * @param part  The part of the plan to collect
+     * @return The indices of the blocks that belong to the part
+     */
+    private static int[] collect(byte[] parts, byte part) {
+
+        int count = 0;
+        for (byte p : parts) {
+            if ((p & part) != 0) {
+                count++;
+            }
+        }
+
+        int[] indices = new int[count];
+        count = 0;
+        for (int i = 0; i < parts.length; i++) {
+            if ((parts[i] & part) != 0) {
+                indices[count++] = i;
+            }
+        }
+        return indices;
+    }
+}
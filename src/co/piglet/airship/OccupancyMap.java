@@ -0,0 +1,117 @@
+package co.piglet.airship;
+
+/**
+ * A sparse bitmap of the cells in a world that belong to an airship. Each 16x16x16 chunk section that contains part
+ * of an airship gets 4096 bits, so checking a cell is one lookup for the section and a bit test, and sections with no
+ * airship blocks take no space at all.
+ *
+ * @author Geoff Wilson
+ */
+public class OccupancyMap {
+
+    // The number of longs used for the bits of a section, plus one to count the occupied cells
+    private static final int SECTION_LENGTH = 65;
+
+    // The bits for each section, keyed by the packed section location (see BlockKey)
+    private final LongObjectHashMap<long[]> sections = new LongObjectHashMap<>(256);
+
+    // The last section we looked at, checks for a face of an airship mostly stay in the same section
+    private long lastKey = Long.MIN_VALUE;
+    private long[] lastSection;
+
+    /**
+     * Checks if the cell at the specified location belongs to an airship
+     *
+     * @param x The X location of the cell
+     * @param y The Y location of the cell
+     * @param z The Z location of the cell
+     * @return True if the cell belongs to an airship
+     */
+    public boolean isOccupied(int x, int y, int z) {
+        long[] section = getSection(x, y, z, false);
+        if (section == null) {
+            return false;
+        }
+        int bit = bit(x, y, z);
+        return (section[bit >> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Marks the cell at the specified location as belonging to an airship
+     *
+     * @param x The X location of the cell
+     * @param y The Y location of the cell
+     * @param z The Z location of the cell
+     */
+    public void set(int x, int y, int z) {
+        long[] section = getSection(x, y, z, true);
+        int bit = bit(x, y, z);
+        if ((section[bit >> 6] & (1L << bit)) == 0) {
+            section[bit >> 6] |= 1L << bit;
+            section[64]++;
+        }
+    }
+
+    /**
+     * Marks the cell at the specified location as empty, sections are thrown away once they are empty
+     *
+     * @param x The X location of the cell
+     * @param y The Y location of the cell
+     * @param z The Z location of the cell
+     */
+    public void clear(int x, int y, int z) {
+        long[] section = getSection(x, y, z, false);
+        if (section == null) {
+            return;
+        }
+        int bit = bit(x, y, z);
+        if ((section[bit >> 6] & (1L << bit)) != 0) {
+            section[bit >> 6] &= ~(1L << bit);
+            if (--section[64] == 0) {
+                sections.remove(lastKey);
+                lastKey = Long.MIN_VALUE;
+                lastSection = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the bits for the section containing a location
+     *
+     * @param x      The X location
+     * @param y      The Y location
+     * @param z      The Z location
+     * @param create True to create the section if it doesn't exist yet
+     * @return The bits for the section, or null if it doesn't exist and create is false
+     */
+    private long[] getSection(int x, int y, int z, boolean create) {
+
+        long key = BlockKey.pack(x >> 4, y >> 4, z >> 4);
+        if (key == lastKey) {
+            return lastSection;
+        }
+
+        long[] section = sections.get(key);
+        if (section == null) {
+            if (!create) {
+                return null;
+            }
+            section = new long[SECTION_LENGTH];
+            sections.put(key, section);
+        }
+
+        lastKey = key;
+        lastSection = section;
+        return section;
+    }
+
+    /**
+     * @param x The X location
+     * @param y The Y location
+     * @param z The Z location
+     * @return The index of the bit for the location within its section
+     */
+    private static int bit(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+}
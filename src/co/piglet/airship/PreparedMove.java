@@ -0,0 +1,151 @@
+package co.piglet.airship;
+
+import org.bukkit.Material;
+
+/**
+ * The block changes for the next move of an airship, worked out on a worker thread while the server thread is still
+ * writing out the last move. The worker is given its own copy of the blocks with the offset index already built and
+ * the plan for the move, which are only ever read here, so the airship can be turned or rescanned on the server thread
+ * while a move is being prepared. The server thread is left with the collision check, the index and the writes.
+ * <p/>
+ * Each airship keeps a single PreparedMove and runs it again for every move, so preparing a move doesn't create any
+ * objects of its own once the buffer has grown to fit the airship. The move is only used if the airship is still where
+ * it was and still has the same shape and velocity when it comes to move, otherwise it is thrown away and the move is
+ * planned again.
+ *
+ * @author Geoff Wilson
+ */
+public class PreparedMove implements Runnable {
+
+    // The move isn't being prepared and doesn't hold a prepared move
+    private static final int IDLE = 0;
+
+    // The move has been handed to a worker and isn't finished yet
+    private static final int RUNNING = 1;
+
+    // The move has been prepared and can be taken by the server thread
+    private static final int READY = 2;
+
+    // Where this move is up to, this is how the worker hands the move back to the server thread
+    private volatile int state = IDLE;
+
+    // The shape of the airship this move was prepared for (see Airship.generation)
+    private int generation;
+
+    // The blocks the move is prepared from
+    private AirshipBlockStore blocks;
+
+    // The origin of the airship before the move
+    private int fromX;
+    private int fromY;
+    private int fromZ;
+
+    // The plan for the move, this includes the amount the airship moves by
+    private MovePlan plan;
+
+    // The block changes for the move, sorted into chunk order
+    private final BlockWriteBuffer writes = new BlockWriteBuffer(256);
+
+    /**
+     * Sets up the next move to prepare, this must be called on the server thread before the move is handed to a
+     * worker. A move that is still being prepared can't be set up again.
+     *
+     * @param generation The shape of the airship the move is for
+     * @param blocks     A copy of the blocks in the airship that nothing else changes, the offset index must already be
+     *                   built
+     * @param plan       The plan for the move, worked out on the server thread
+     * @param fromX      The X location of the origin before the move
+     * @param fromY      The Y location of the origin before the move
+     * @param fromZ      The Z location of the origin before the move
+     * @return True if the move was set up and should be run on a worker, false if the last one is still running
+     */
+    public boolean start(int generation, AirshipBlockStore blocks, MovePlan plan, int fromX, int fromY, int fromZ) {
+
+        if (plan == null) {
+            throw new IllegalArgumentException("A prepared move needs the plan for the move");
+        }
+        if (state == RUNNING) {
+            return false;
+        }
+
+        this.generation = generation;
+        this.blocks = blocks;
+        this.plan = plan;
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.fromZ = fromZ;
+        writes.clear();
+        state = RUNNING;
+        return true;
+    }
+
+    /**
+     * Works out the block changes for the move, this is run on a worker thread
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void run() {
+
+        int dx = plan.dx;
+        int dy = plan.dy;
+        int dz = plan.dz;
+
+        // Clear the cells on the trailing face of the airship, these are empty after the move
+        for (int i : plan.clears) {
+            writes.add(fromX + blocks.getX(i), fromY + blocks.getY(i), fromZ + blocks.getZ(i), Material.AIR.getId(), 0);
+        }
+
+        // Place the blocks whose new location held something different before the move
+        for (int i : plan.writes) {
+            writes.add(fromX + dx + blocks.getX(i), fromY + dy + blocks.getY(i), fromZ + dz + blocks.getZ(i), blocks.getType(i), blocks.getData(i));
+        }
+
+        // The clears and placements never share a location, so the whole move can be sorted into chunk order
+        writes.sortByChunk(0, writes.size());
+
+        // The blocks aren't needed once the changes are worked out
+        blocks = null;
+        state = READY;
+    }
+
+    /**
+     * Checks if this is the move the airship is about to make, and it has finished being prepared
+     *
+     * @param generation The current shape of the airship
+     * @param fromX      The current X location of the origin
+     * @param fromY      The current Y location of the origin
+     * @param fromZ      The current Z location of the origin
+     * @param dx         The current velocity on the X axis
+     * @param dy         The current velocity on the Y axis
+     * @param dz         The current velocity on the Z axis
+     * @return True if the move was prepared for the airship as it is now
+     */
+    public boolean isFor(int generation, int fromX, int fromY, int fromZ, int dx, int dy, int dz) {
+        return state == READY && this.generation == generation && this.fromX == fromX && this.fromY == fromY &&
+                this.fromZ == fromZ && plan.dx == dx && plan.dy == dy && plan.dz == dz;
+    }
+
+    /**
+     * Throws away a move that has been prepared, once it has been used or is no longer needed. A move that is still
+     * being prepared is left to finish, it won't match the airship by the time it is done.
+     */
+    public void discard() {
+        if (state == READY) {
+            state = IDLE;
+        }
+    }
+
+    /**
+     * @return The plan for the move
+     */
+    public MovePlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return The block changes for the move, sorted into chunk order
+     */
+    public BlockWriteBuffer getWrites() {
+        return writes;
+    }
+}
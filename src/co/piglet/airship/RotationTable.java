@@ -1,42 +1,91 @@
 package co.piglet.airship;
 
 import org.bukkit.Material;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
 
 /**
- * Represents a block in the airship, uses code from WorldEdit licenced under GNU LGPLv3
+ * Lookup tables for the data value of a block after it is rotated, indexed by type id and data value. The tables are
+ * built once from the rotation functions below, so rotating a block is an array lookup rather than a pass through the
+ * switch statements. There is a table for each turn, so turning around is a single lookup. The rotation functions use
+ * code from WorldEdit licenced under GNU LGPLv3.
  *
  * @author Geoff Wilson
  * @author Ben Carvell
  */
-public class AirshipBlock implements Comparable<AirshipBlock> {
-
-   /**
-     * This is the quick constructor for loading the Airship from disk
-     * @param x The blocks X location in the world
-     * @param y The blocks Y location in the world
-     * @param z The blocks Z location in the world
-     * @param t The blocks Material type
-     * @param d The blocks data value (color etc..)
+public final class RotationTable {
+
+    // One entry for each type id and data value, the index is (type << 4) | data
+    private static final byte[] RIGHT;
+    private static final byte[] AROUND;
+    private static final byte[] LEFT;
+
+    static {
+
+        // Find the highest type id so we know how big the tables need to be
+        int maxId = 0;
+        for (Material material : Material.values()) {
+            maxId = Math.max(maxId, id(material));
+        }
+
+        RIGHT = new byte[(maxId + 1) << 4];
+        AROUND = new byte[(maxId + 1) << 4];
+        LEFT = new byte[(maxId + 1) << 4];
+
+        // Start with every data value mapping to itself, this covers the ids that aren't a Material
+        for (int i = 0; i < RIGHT.length; i++) {
+            RIGHT[i] = AROUND[i] = LEFT[i] = (byte) (i & 15);
+        }
+
+        for (Material material : Material.values()) {
+            for (int data = 0; data < 16; data++) {
+                int index = (id(material) << 4) | data;
+                RIGHT[index] = (byte) rotate90(material, data);
+                AROUND[index] = (byte) rotate90(material, rotate90(material, data) & 15);
+                LEFT[index] = (byte) rotate90Reverse(material, data);
+            }
+        }
+    }
+
+    private RotationTable() {
+    }
+
+    /**
+     * Gets the data value of a block after it has been turned
+     *
+     * @param turnDirection The direction the block is turned in
+     * @param type          The type id of the block
+     * @param data          The current data value of the block
+     * @return The new data value for the block
      */
-    public AirshipBlock(int x, int y, int z, Material t, int d) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.t = t;
-        this.d = (byte) d;
+    public static byte rotate(TurnDirection turnDirection, int type, int data) {
+
+        int index = (type << 4) | (data & 15);
+
+        // Blocks we don't know about keep their data value
+        if (index >= RIGHT.length) {
+            return (byte) data;
+        }
+
+        switch (turnDirection) {
+            case RIGHT:
+                return RIGHT[index];
+            case AROUND:
+                return AROUND[index];
+            default:
+                return LEFT[index];
+        }
     }
 
     /**
      * Set the correct new data value to rotate a block, this code is adapted from WorldEdit to use standard
-     * Material types instead of WorldEdit ones.
+     * Material types instead of WorldEdit ones. This turns the block to the left, the tables are built from it (and
+     * checked against it by RotationTableTest).
      *
      * @param type The type of block to rotate
      * @param data The current data value
      * @return The new data value for the block
      */
-    public int rotate90Reverse(Material type, int data) {
+    @SuppressWarnings("fallthrough")
+    static int rotate90Reverse(Material type, int data) {
 
         switch (type) {
             case TORCH:
@@ -65,6 +114,7 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
                     case 6:
                         return 9;
                 }
+                // Curved rails are handled above, straight and sloped rails fall through and turn like powered rails
 
             case POWERED_RAIL:
             case DETECTOR_RAIL:
@@ -147,6 +197,7 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
                     // door top halves contain no orientation information
                     break;
                 }
+                // The bottom half of a door falls through and turns like cocoa and tripwire hooks
 
             case COCOA:
             case TRIPWIRE_HOOK:
@@ -253,6 +304,7 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
                     case 1:
                         return 3 | withoutOrientation;
                 }
+                // Every orientation of a trap door is handled above, nothing falls through from here
 
             case PISTON_BASE:
             case PISTON_STICKY_BASE:
@@ -307,13 +359,15 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
 
     /**
      * Set the correct new data value to rotate a block, this code is adapted from WorldEdit to use standard
-     * Material types instead of WorldEdit ones.
+     * Material types instead of WorldEdit ones. This turns the block to the right, the tables are built from it (and
+     * checked against it by RotationTableTest).
      *
      * @param type The type of block to rotate
      * @param data The current data value
      * @return The new data value for the block
      */
-    public int rotate90(Material type, int data) {
+    @SuppressWarnings("fallthrough")
+    static int rotate90(Material type, int data) {
         switch (type) {
             case TORCH:
             case REDSTONE_TORCH_OFF:
@@ -341,6 +395,7 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
                     case 9:
                         return 6;
                 }
+                // Curved rails are handled above, straight and sloped rails fall through and turn like powered rails
 
             case POWERED_RAIL:
             case DETECTOR_RAIL:
@@ -422,6 +477,7 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
                     // door top halves contain no orientation information
                     break;
                 }
+                // The bottom half of a door falls through and turns like cocoa and tripwire hooks
 
             case COCOA:
             case TRIPWIRE_HOOK:
@@ -582,161 +638,12 @@ public class AirshipBlock implements Comparable<AirshipBlock> {
         return data;
     }
 
-    // The location of the AirshipBlock
-    public int x;
-    public int y;
-    public int z;
-
-    // The data value of the AirshipBlock
-    public byte d;
-
-    // The type of the AirshipBlock
-    public Material t;
-
     /**
-     * Create a new AirshipBlock based on the Block from the world
-     *
-     * @param b The Block in the world to base this AirshipBlock on
+     * @param material The material to get the id of
+     * @return The type id of the material
      */
     @SuppressWarnings("deprecation")
-    public AirshipBlock(Block b) {
-
-        // Set the location values for the airship block
-        x = b.getX();
-        y = b.getY();
-        z = b.getZ();
-
-        // Set the data value for this airship block (color etc..)
-        d = b.getData();
-
-        // Set the type of the airship block
-        t = b.getType();
-    }
-
-    /**
-     * Checks if this AirshipBlock is equal to another airship block (this only takes location into account
-     * not material)
-     *
-     * @param other The other AirshipBlock to compare this to
-     * @return True if these blocks occupy the same location, False if not
-     */
-    @Override
-    public boolean equals(Object other) {
-
-        // Check if the object to compare is an AirshipBlock
-        if (other instanceof AirshipBlock) {
-
-
-
-            // Cast the other object to an AirshipBlock
-            AirshipBlock otherBlock = (AirshipBlock) other;
-
-            // Return true if the x,y and z values are equal between this block and the other block
-            return otherBlock.x == x && otherBlock.y == y && otherBlock.z == z;
-
-        }   else if (other instanceof Block){
-
-            Block otherBlock = (Block) other;
-
-            return otherBlock.getLocation().getBlockX() == x && otherBlock.getLocation().getBlockY() == y && otherBlock.getLocation().getBlockZ() == z;
-
-        }
-
-        // Return false as this isn't an airship block we are comparing to
-        return false;
-    }
-
-    /**
-     * Shifts the block in the specified direction
-     *
-     * @param direction   The direction to shift the block in
-     * @param isReversing Indicates if the airship is reversing (the shift is opposite in this case)
-     */
-    public void shiftBlock(BlockFace direction, boolean isReversing) {
-
-        // Set the default shift to nothing
-        int xDelta = 0;
-        int yDelta = 0;
-        int zDelta = 0;
-
-        // Which direction are we trying to shift the block?
-        switch (direction) {
-            case EAST:
-                xDelta = isReversing ? -1 : 1;
-                break;
-            case WEST:
-                xDelta = isReversing ? 1 : -1;
-                break;
-            case NORTH:
-                zDelta = isReversing ? 1 : -1;
-                break;
-            case SOUTH:
-                zDelta = isReversing ? -1 : 1;
-                break;
-            case UP:
-                yDelta = 1; // Does not support reversing
-                break;
-            case DOWN:
-                yDelta = -1; // Does not support reversing
-        }
-
-        // Adjust the blocks location based on the calculations above
-        x += xDelta;
-        y += yDelta;
-        z += zDelta;
-    }
-
-    /**
-     * Rotates the block in the specified direction about the origin points supplied
-     *
-     * @param turnDirection The direction we are trying to rotate the block in
-     * @param originX       The x origin we are rotating about
-     * @param originZ       The z origin we are rotating about
-     */
-    public void rotateBlock(TurnDirection turnDirection, int originX, int originZ) {
-
-        // Work out the delta between the blocks location and the origin
-        int x = this.x - originX;
-        int z = this.z - originZ;
-
-        // Calculation variables
-        int x2;
-        int z2;
-
-        // Work out the correct x and z values for the rotation based on the deltas above
-        if (turnDirection == TurnDirection.RIGHT) {
-            x2 = -z;
-            z2 = x;
-        } else {
-            x2 = z;
-            z2 = -x;
-        }
-
-        // Set the new location of the block
-        this.x = x2 + originX;
-        this.z = z2 + originZ;
-
-        // Get the correct data value for the block using the WorldEdit functions
-        this.d = (byte) (turnDirection == TurnDirection.RIGHT ? rotate90(this.t, this.d) : rotate90Reverse(this.t, this.d));
-    }
-
-    /**
-     * Compares this AirshipBlock to another (not used anymore). This was used for sorting the array but is no
-     * longer required.
-     *
-     * @param o The other AirshipBlock we are comparing this one to
-     * @return -1 if this block is less than the other, 0 if they are the same, and 1 if this block is greater
-     */
-    @Override
-    public int compareTo(AirshipBlock o) {
-
-        // Compare the X location of this AirshipBlock to the other one
-        if (o.x < this.x) {
-            return -1;
-        } else if (o.x == this.x) {
-            return 0;
-        } else {
-            return 1;
-        }
+    private static int id(Material material) {
+        return material.getId();
     }
-}
\ No newline at end of file
+}
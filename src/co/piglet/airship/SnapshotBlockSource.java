@@ -0,0 +1,130 @@
+package co.piglet.airship;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads blocks from chunk snapshots so that an airship can be scanned away from the server thread. The chunks around
+ * the initial block are captured up front, if the scan reaches a chunk we haven't captured then we ask the server
+ * thread for a snapshot of that chunk and wait for it.
+ *
+ * @author Geoff Wilson
+ */
+public class SnapshotBlockSource implements BlockSource {
+
+    // The world the snapshots are taken from
+    private final World world;
+
+    // The plugin used to schedule snapshots on the server thread
+    private final Plugin plugin;
+
+    // The height of the world
+    private final int maxHeight;
+
+    // The snapshots we have captured so far, keyed by BlockKey.chunk
+    private final HashMap<Long, ChunkSnapshot> snapshots = new HashMap<>();
+
+    // The last snapshot we read from, scanning mostly stays in the same chunk so this saves the map lookup
+    private ChunkSnapshot lastSnapshot;
+    private int lastChunkX;
+    private int lastChunkZ;
+
+    /**
+     * Creates a snapshot block source, this must be called on the server thread as it captures the chunks around
+     * the specified location
+     *
+     * @param plugin The plugin used to schedule further snapshots
+     * @param world  The world to take snapshots from
+     * @param x      The X location of the initial block
+     * @param z      The Z location of the initial block
+     * @param radius The number of chunks around the initial block to capture up front
+     */
+    public SnapshotBlockSource(Plugin plugin, World world, int x, int z, int radius) {
+
+        this.plugin = plugin;
+        this.world = world;
+        this.maxHeight = world.getMaxHeight();
+
+        for (int chunkX = (x >> 4) - radius; chunkX <= (x >> 4) + radius; chunkX++) {
+            for (int chunkZ = (z >> 4) - radius; chunkZ <= (z >> 4) + radius; chunkZ++) {
+                snapshots.put(BlockKey.chunk(chunkX, chunkZ), takeSnapshot(chunkX, chunkZ));
+            }
+        }
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    @Override
+    public int getTypeId(int x, int y, int z) {
+        return getSnapshot(x >> 4, z >> 4).getBlockTypeId(x & 15, y, z & 15);
+    }
+
+    @Override
+    public int getData(int x, int y, int z) {
+        return getSnapshot(x >> 4, z >> 4).getBlockData(x & 15, y, z & 15);
+    }
+
+    /**
+     * Gets the snapshot for the specified chunk, asking the server thread for it if we haven't captured it yet
+     *
+     * @param chunkX The X value of the chunk
+     * @param chunkZ The Z value of the chunk
+     * @return The snapshot of the chunk
+     */
+    private ChunkSnapshot getSnapshot(final int chunkX, final int chunkZ) {
+
+        if (lastSnapshot != null && lastChunkX == chunkX && lastChunkZ == chunkZ) {
+            return lastSnapshot;
+        }
+
+        long key = BlockKey.chunk(chunkX, chunkZ);
+        ChunkSnapshot snapshot = snapshots.get(key);
+
+        if (snapshot == null) {
+
+            // We can't touch the world from here, so wait for the server thread to capture the chunk for us
+            Future<ChunkSnapshot> future = plugin.getServer().getScheduler().callSyncMethod(plugin, new Callable<ChunkSnapshot>() {
+                @Override
+                public ChunkSnapshot call() {
+                    return takeSnapshot(chunkX, chunkZ);
+                }
+            });
+
+            try {
+                snapshot = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for chunk " + chunkX + "," + chunkZ);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to capture chunk " + chunkX + "," + chunkZ, e.getCause());
+            }
+
+            snapshots.put(key, snapshot);
+        }
+
+        lastSnapshot = snapshot;
+        lastChunkX = chunkX;
+        lastChunkZ = chunkZ;
+        return snapshot;
+    }
+
+    /**
+     * Captures a snapshot of the specified chunk, must be called on the server thread
+     *
+     * @param chunkX The X value of the chunk
+     * @param chunkZ The Z value of the chunk
+     * @return The snapshot of the chunk (without height map or biome data, we don't need them)
+     */
+    private ChunkSnapshot takeSnapshot(int chunkX, int chunkZ) {
+        return world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+    }
+}
@@ -0,0 +1,78 @@
+package co.piglet.airship;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the arithmetic part of moving or turning a very large airship (new offsets, new data values and which cells
+ * change) across every core. The blocks are split into ranges and each range writes only to its own part of the
+ * output arrays, so nothing is locked. Nothing here touches the world, the results are applied on the server thread
+ * once every range has finished.
+ *
+ * @author Geoff Wilson
+ */
+public final class TransformKernel {
+
+    // Airships with fewer blocks than this are done on the calling thread, splitting them up costs more than it saves
+    public static final int PARALLEL_THRESHOLD = 20000;
+
+    // The smallest range of blocks handed to a single task
+    private static final int MIN_RANGE = 4096;
+
+    // The worker threads, one per core (these are daemon threads so they never hold up a shutdown)
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private TransformKernel() {
+    }
+
+    /**
+     * Runs a task over every block in an airship and waits for it to finish, in parallel if the airship is big enough
+     *
+     * @param size The number of blocks in the airship
+     * @param task The work to do for each range of blocks
+     */
+    public static void forRange(int size, BlockRangeTask task) {
+
+        if (size < PARALLEL_THRESHOLD || POOL.getParallelism() < 2) {
+            task.run(0, size);
+            return;
+        }
+
+        POOL.invoke(new RangeAction(task, 0, size));
+    }
+
+    /**
+     * Stops the worker threads, this is called when the plugin is disabled
+     */
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Splits a range in half until the pieces are small enough to run
+     */
+    private static class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BlockRangeTask task;
+        private final int from;
+        private final int to;
+
+        private RangeAction(BlockRangeTask task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_RANGE) {
+                task.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeAction(task, from, middle), new RangeAction(task, middle, to));
+            }
+        }
+    }
+}
@@ -6,5 +6,5 @@ package co.piglet.airship;
  * @author Geoff Wilson
  */
 public enum TurnDirection {
-    LEFT, RIGHT
+    LEFT, RIGHT, AROUND
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package co.piglet.airship;
+
+import org.bukkit.World;
+
+/**
+ * Reads blocks directly from the live world, this can only be used on the server thread
+ *
+ * @author Geoff Wilson
+ */
+public class WorldBlockSource implements BlockSource {
+
+    // The world we are reading blocks from
+    private World world;
+
+    /**
+     * Creates a block source for the specified world
+     *
+     * @param world The world to read blocks from
+     */
+    public WorldBlockSource(World world) {
+        this.world = world;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return world.getMaxHeight();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int getTypeId(int x, int y, int z) {
+        return world.getBlockTypeIdAt(x, y, z);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public int getData(int x, int y, int z) {
+        return world.getBlockAt(x, y, z).getData();
+    }
+}
@@ -0,0 +1,207 @@
+package co.piglet.airship;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bounding box, the offset index, copies and turns of AirshipBlockStore
+ *
+ * @author Geoff Wilson
+ */
+public class AirshipBlockStoreTest {
+
+    // The type id of stone, stone doesn't change its data value when it is turned
+    private static final int STONE = 1;
+
+    @Test
+    public void emptyStoreIsBoundedByTheOrigin() {
+        AirshipBlockStore blocks = new AirshipBlockStore(0);
+
+        assertEquals(0, blocks.size());
+        assertBounds(blocks, 0, 0, 0, 0, 0, 0);
+        assertEquals(-1, blocks.indexOf(0, 0, 0));
+
+        // Turning an empty store leaves it empty, and the next block is the whole bounding box
+        blocks.rotate(TurnDirection.RIGHT, 5, -5);
+        assertBounds(blocks, 0, 0, 0, 0, 0, 0);
+        blocks.add(3, 4, 5, STONE, 0);
+        assertBounds(blocks, 3, 4, 5, 3, 4, 5);
+    }
+
+    @Test
+    public void boundsCoverEveryBlock() {
+        AirshipBlockStore blocks = new AirshipBlockStore(4);
+        blocks.add(1, 2, 3, STONE, 0);
+        blocks.add(-4, 7, 0, STONE, 0);
+        blocks.add(2, -1, -6, STONE, 0);
+
+        assertBounds(blocks, -4, -1, -6, 2, 7, 3);
+    }
+
+    @Test
+    public void growsPastItsCapacity() {
+        AirshipBlockStore blocks = new AirshipBlockStore(16);
+        for (int i = 0; i < 1000; i++) {
+            blocks.add(i, i % 7, -i, STONE, i & 15);
+        }
+
+        assertEquals(1000, blocks.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, blocks.getX(i));
+            assertEquals(i % 7, blocks.getY(i));
+            assertEquals(-i, blocks.getZ(i));
+            assertEquals(STONE, blocks.getType(i));
+            assertEquals(i & 15, blocks.getData(i));
+        }
+    }
+
+    @Test
+    public void indexOfFindsEveryBlock() {
+        AirshipBlockStore blocks = randomStore(new Random(1), 500);
+
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(i, blocks.indexOf(blocks.getX(i), blocks.getY(i), blocks.getZ(i)));
+        }
+        assertEquals(-1, blocks.indexOf(1000, 1000, 1000));
+
+        // A block added after the index was built is found too
+        blocks.add(1000, 1000, 1000, STONE, 0);
+        assertEquals(blocks.size() - 1, blocks.indexOf(1000, 1000, 1000));
+    }
+
+    @Test
+    public void copyDoesNotShareTheBlocks() {
+        AirshipBlockStore blocks = randomStore(new Random(2), 200);
+        AirshipBlockStore copy = blocks.copy();
+        assertSameBlocks(blocks, copy);
+
+        // Changing the original leaves the copy as it was
+        blocks.rotate(TurnDirection.RIGHT, 0, 0);
+        blocks.add(500, 500, 500, STONE, 0);
+        AirshipBlockStore expected = randomStore(new Random(2), 200);
+        assertSameBlocks(expected, copy);
+        assertEquals(-1, copy.indexOf(500, 500, 500));
+    }
+
+    @Test
+    public void rotateTurnsOffsetsAboutThePivot() {
+        AirshipBlockStore blocks = new AirshipBlockStore(1);
+        blocks.add(3, 0, 1, STONE, 0);
+
+        // A quarter turn right takes +X to +Z
+        blocks.rotate(TurnDirection.RIGHT, 1, 1);
+        assertEquals(1, blocks.getX(0));
+        assertEquals(3, blocks.getZ(0));
+
+        blocks.rotate(TurnDirection.AROUND, 1, 1);
+        assertEquals(1, blocks.getX(0));
+        assertEquals(-1, blocks.getZ(0));
+
+        blocks.rotate(TurnDirection.LEFT, 1, 1);
+        assertEquals(-1, blocks.getX(0));
+        assertEquals(1, blocks.getZ(0));
+    }
+
+    @Test
+    public void rotateKeepsTheBoundsAndIndexUpToDate() {
+        Random random = new Random(3);
+        AirshipBlockStore blocks = randomStore(random, 300);
+
+        for (int turn = 0; turn < 20; turn++) {
+            TurnDirection direction = TurnDirection.values()[random.nextInt(TurnDirection.values().length)];
+            blocks.rotate(direction, random.nextInt(21) - 10, random.nextInt(21) - 10);
+
+            int minX = Integer.MAX_VALUE;
+            int minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxZ = Integer.MIN_VALUE;
+            for (int i = 0; i < blocks.size(); i++) {
+                minX = Math.min(minX, blocks.getX(i));
+                minZ = Math.min(minZ, blocks.getZ(i));
+                maxX = Math.max(maxX, blocks.getX(i));
+                maxZ = Math.max(maxZ, blocks.getZ(i));
+                assertEquals(i, blocks.indexOf(blocks.getX(i), blocks.getY(i), blocks.getZ(i)));
+            }
+            assertEquals(minX, blocks.getMinX());
+            assertEquals(minZ, blocks.getMinZ());
+            assertEquals(maxX, blocks.getMaxX());
+            assertEquals(maxZ, blocks.getMaxZ());
+        }
+    }
+
+    @Test
+    public void turningRightThenLeftRestoresTheBlocks() {
+        AirshipBlockStore blocks = randomStore(new Random(4), 300);
+
+        blocks.rotate(TurnDirection.RIGHT, 4, -2);
+        blocks.rotate(TurnDirection.LEFT, 4, -2);
+        assertSameBlocks(randomStore(new Random(4), 300), blocks);
+
+        for (int i = 0; i < 4; i++) {
+            blocks.rotate(TurnDirection.RIGHT, -3, 7);
+        }
+        assertSameBlocks(randomStore(new Random(4), 300), blocks);
+    }
+
+    @Test
+    public void indexTakenBeforeATurnStillHasTheOldOffsets() {
+        AirshipBlockStore blocks = new AirshipBlockStore(2);
+        blocks.add(2, 0, 0, STONE, 0);
+        blocks.add(0, 0, 0, STONE, 0);
+
+        LongIntHashMap before = blocks.getIndex();
+        blocks.rotate(TurnDirection.RIGHT, 0, 0);
+
+        assertEquals(0, before.get(BlockKey.pack(2, 0, 0)));
+        assertEquals(-1, blocks.indexOf(2, 0, 0));
+        assertEquals(0, blocks.indexOf(0, 0, 2));
+        assertTrue(before != blocks.getIndex());
+    }
+
+    /**
+     * Makes a store of blocks at distinct random offsets, the same seed always gives the same store
+     *
+     * @param random The random numbers to place the blocks with
+     * @param count  The number of blocks to try to add
+     * @return The store
+     */
+    private static AirshipBlockStore randomStore(Random random, int count) {
+        AirshipBlockStore blocks = new AirshipBlockStore(count);
+        LongHashSet used = new LongHashSet(count);
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(41) - 20;
+            int y = random.nextInt(11);
+            int z = random.nextInt(41) - 20;
+            if (used.add(BlockKey.pack(x, y, z))) {
+                blocks.add(x, y, z, STONE, 0);
+            }
+        }
+        return blocks;
+    }
+
+    private static void assertSameBlocks(AirshipBlockStore expected, AirshipBlockStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i));
+            assertEquals(expected.getY(i), actual.getY(i));
+            assertEquals(expected.getZ(i), actual.getZ(i));
+            assertEquals(expected.getType(i), actual.getType(i));
+            assertEquals(expected.getData(i), actual.getData(i));
+        }
+        assertBounds(actual, expected.getMinX(), expected.getMinY(), expected.getMinZ(), expected.getMaxX(),
+                expected.getMaxY(), expected.getMaxZ());
+    }
+
+    private static void assertBounds(AirshipBlockStore blocks, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        assertEquals(minX, blocks.getMinX());
+        assertEquals(minY, blocks.getMinY());
+        assertEquals(minZ, blocks.getMinZ());
+        assertEquals(maxX, blocks.getMaxX());
+        assertEquals(maxY, blocks.getMaxY());
+        assertEquals(maxZ, blocks.getMaxZ());
+    }
+}
@@ -0,0 +1,64 @@
+package co.piglet.airship;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the rotation lookup tables against the WorldEdit rotation functions they replaced, for every type id and data
+ * value
+ *
+ * @author Geoff Wilson
+ */
+public class RotationTableTest {
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void rightMatchesRotate90() {
+        for (Material material : Material.values()) {
+            for (int data = 0; data < 16; data++) {
+                assertEquals(material + ":" + data, (byte) RotationTable.rotate90(material, data),
+                        RotationTable.rotate(TurnDirection.RIGHT, material.getId(), data));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void leftMatchesRotate90Reverse() {
+        for (Material material : Material.values()) {
+            for (int data = 0; data < 16; data++) {
+                assertEquals(material + ":" + data, (byte) RotationTable.rotate90Reverse(material, data),
+                        RotationTable.rotate(TurnDirection.LEFT, material.getId(), data));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void aroundIsTwoRightTurns() {
+        for (Material material : Material.values()) {
+            for (int data = 0; data < 16; data++) {
+
+                // Against the functions, the data value is only ever four bits in the world
+                assertEquals(material + ":" + data, (byte) RotationTable.rotate90(material, RotationTable.rotate90(material, data) & 15),
+                        RotationTable.rotate(TurnDirection.AROUND, material.getId(), data));
+
+                // And against the table for a single right turn
+                byte right = RotationTable.rotate(TurnDirection.RIGHT, material.getId(), data);
+                assertEquals(material + ":" + data, RotationTable.rotate(TurnDirection.RIGHT, material.getId(), right),
+                        RotationTable.rotate(TurnDirection.AROUND, material.getId(), data));
+            }
+        }
+    }
+
+    @Test
+    public void unknownTypesKeepTheirData() {
+        for (int data = 0; data < 16; data++) {
+            assertEquals(data, RotationTable.rotate(TurnDirection.RIGHT, 4095, data));
+            assertEquals(data, RotationTable.rotate(TurnDirection.LEFT, 4095, data));
+            assertEquals(data, RotationTable.rotate(TurnDirection.AROUND, 4095, data));
+        }
+    }
+}